@@ -0,0 +1,49 @@
+package natetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deals the pieces like the 7-bag of modern Tetris games: every kind of piece is put in a bag, which is
+ * shuffled and emptied before a new one is filled. Every kind then shows up once in every seven pieces,
+ * so no piece is ever missing for more than twelve pieces in a row.
+ */
+public class BagPieceGenerator implements PieceGenerator {
+
+	private SplittableRandom random = new SplittableRandom();
+
+	/**
+	 * The ordinals of the pieces in the bag, and how many of them were dealt already
+	 */
+	private final int[] bag = new int[GameEngine.PIECES_COUNT];
+	private int dealtCount = bag.length;
+
+	@Override
+	public void setSeed(long seed) {
+		this.random = new SplittableRandom(seed);
+		this.dealtCount = bag.length;
+	}
+
+	@Override
+	public Piece next() {
+		if (dealtCount == bag.length) {
+			fillBag();
+		}
+		return Piece.fromOrdinal(bag[dealtCount++]);
+	}
+
+	/**
+	 * Puts one of each piece in the bag, and shuffles it
+	 */
+	private void fillBag() {
+		for (int i = 0; i < bag.length; i++) {
+			bag[i] = i;
+		}
+		for (int i = bag.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int ordinal = bag[i];
+			bag[i] = bag[j];
+			bag[j] = ordinal;
+		}
+		dealtCount = 0;
+	}
+}
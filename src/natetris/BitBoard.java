@@ -0,0 +1,327 @@
+package natetris;
+
+import java.util.Arrays;
+
+import jdk.jfr.EventType;
+import natetris.jfr.LineClearEvent;
+import natetris.jfr.PieceLockEvent;
+
+/**
+ * The {@code BitBoard} class holds the logical state of the board. Each row is stored as a
+ * bit mask, so that testing a piece against the board takes one AND operation per piece row.
+ * The color of every landed tile is kept apart, in a compact array that is only read for rendering.
+ */
+public class BitBoard {
+
+	/**
+	 * The number of rows and columns of the board. Two of the rows stay hidden
+	 * so that the piece doesn't show up magically
+	 */
+	public static final int HIDDEN_ROW_COUNT = 2;
+	public static final int VISIBLE_ROW_COUNT = 20;
+	public static final int ROW_COUNT = VISIBLE_ROW_COUNT + HIDDEN_ROW_COUNT;
+	public static final int COL_COUNT = 10;
+
+	/**
+	 * Every row mask is padded with wall bits on both sides, wide enough for any piece
+	 * to hang out of the board, so that hitting an edge is just another collision.
+	 * Board column {@code col} lives at bit {@code col + WALL_WIDTH}
+	 */
+	private static final int WALL_WIDTH = Piece.MAX_PIECE_DIMENSION - 1;
+	private static final int WALL_MASK = (1 << WALL_WIDTH) - 1;
+
+	/**
+	 * A row with nothing on it but the walls, and a row completely filled up
+	 */
+	private static final int EMPTY_ROW = WALL_MASK | (WALL_MASK << (COL_COUNT + WALL_WIDTH));
+	private static final int FULL_ROW = (1 << (COL_COUNT + WALL_WIDTH * 2)) - 1;
+
+	/**
+	 * The flight recorder events of a piece being added and of lines being cleared, checked before creating one,
+	 * as pieces are added so often that even an unused event costs when the game runs headless
+	 */
+	private static final EventType PIECE_LOCK_EVENT = EventType.getEventType(PieceLockEvent.class);
+	private static final EventType LINE_CLEAR_EVENT = EventType.getEventType(LineClearEvent.class);
+
+	/**
+	 * The rows of the board as bit masks. Rows past {@code ROW_COUNT} are always full
+	 * and act as the floor
+	 */
+	private final int[] rows = new int[ROW_COUNT + Piece.MAX_PIECE_DIMENSION];
+
+	/**
+	 * The color of each tile, stored as the ordinal of the landed piece plus one,
+	 * indexed by {@code row * COL_COUNT + col}. Zero means the tile is empty
+	 */
+	private final byte[] colors = new byte[ROW_COUNT * COL_COUNT];
+
+	/**
+	 * The height of each column, which is the number of rows between the floor and the 
+	 * topmost landed tile of the column, inclusive. Zero means the column is empty
+	 */
+	private final int[] heights = new int[COL_COUNT];
+
+	/**
+	 * The topmost and the lowermost rows touched by the last piece added to the board, which are the only
+	 * rows that may have been filled up since lines were last checked. Empty when {@code lockedTop > lockedBottom}
+	 */
+	private int lockedTop;
+	private int lockedBottom;
+
+	/**
+	 * Counts the changes made to the board, so that copies of it know when they're out of date
+	 */
+	private long version;
+
+	/**
+	 * Counts the calls to {@link #isPossibleToMovePiece(Piece, int, int, int)}, for the game metrics
+	 */
+	private long collisionChecks;
+
+	/**
+	 * The rows cleared by the last call to {@link #checkLines()}, from the bottom up
+	 */
+	private final int[] clearedRows = new int[Piece.MAX_PIECE_DIMENSION];
+
+	public BitBoard() {
+		clear();
+	}
+
+	/**
+	 * Adds a piece that has either hit the ground or another piece to the board
+	 * @param piece to be added to the board
+	 * @param boardCol is the column position of the board where the piece starts
+	 * @param boardRow is the row position of the board where the piece starts
+	 * @param rotation is the current position of the piece
+	 */
+	public void addPieceToTheBoard(Piece piece, int boardCol, int boardRow, int rotation) {
+		int[] tileCols = piece.getTileCols(rotation);
+		int[] tileRows = piece.getTileRows(rotation);
+		byte color = (byte) (piece.ordinal() + 1);
+		for (int tile = 0; tile < Piece.TILE_COUNT; tile++) {
+			int col = boardCol + tileCols[tile];
+			int row = boardRow + tileRows[tile];
+			rows[row] |= 1 << (col + WALL_WIDTH);
+			colors[row * COL_COUNT + col] = color;
+			heights[col] = Math.max(heights[col], ROW_COUNT - row);
+		}
+		lockedTop = boardRow + piece.getTopmostTile(rotation);
+		lockedBottom = boardRow + piece.getLowermostTile(rotation);
+		version++;
+
+		if (PIECE_LOCK_EVENT.isEnabled()) {
+			PieceLockEvent event = new PieceLockEvent();
+			event.piece = piece.name();
+			event.col = boardCol;
+			event.row = boardRow;
+			event.rotation = rotation;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Checks if it's possible to move the piece to a new position of the board.<br>
+	 * Invalid positions are anywhere outside the board or anywhere inside the board where
+	 * there is another piece already
+	 * @param piece - the piece to be checked
+	 * @param col - the piece's column
+	 * @param row - the piece's row
+	 * @param pieceRotation - the piece's current rotation
+	 * @return true if possible to move, false otherwise
+	 */
+	public boolean isPossibleToMovePiece(Piece piece, int col, int row, int pieceRotation) {
+		collisionChecks++;
+		int shift = col + WALL_WIDTH;
+		// the piece is entirely out of the walls
+		if (shift < 0 || col >= COL_COUNT || row >= ROW_COUNT) {
+			return false;
+		}
+		int[] masks = piece.getRowMasks(pieceRotation);
+		int lowermost = piece.getLowermostTile(pieceRotation);
+		for (int pieceRow = piece.getTopmostTile(pieceRotation); pieceRow <= lowermost; pieceRow++) {
+			if ((rows[row + pieceRow] & (masks[pieceRow] << shift)) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Clears the entire board, leaving only the walls and the floor
+	 */
+	public void clear() {
+		Arrays.fill(rows, 0, ROW_COUNT, EMPTY_ROW);
+		Arrays.fill(rows, ROW_COUNT, rows.length, FULL_ROW);
+		Arrays.fill(colors, (byte) 0);
+		Arrays.fill(heights, 0);
+		lockedTop = ROW_COUNT;
+		lockedBottom = -1;
+		version++;
+	}
+
+	/**
+	 * Checks if the rows touched by the last piece added to the board were completely filled up, 
+	 * and destroys them. All the rows above are then moved down in a single pass
+	 * @return number of rows completely filled up
+	 * @see #getClearedRows()
+	 */
+	public int checkLines() {
+		int clearedLines = 0;
+		for (int row = lockedBottom; row >= lockedTop; row--) {
+			if (rows[row] == FULL_ROW) {
+				clearedRows[clearedLines++] = row;
+			}
+		}
+		if (clearedLines > 0) {
+			if (LINE_CLEAR_EVENT.isEnabled()) {
+				LineClearEvent event = new LineClearEvent();
+				event.begin();
+				removeFilledLines(clearedLines);
+				event.rowCount = clearedLines;
+				event.lowestRow = clearedRows[0];
+				event.commit();
+			} else {
+				removeFilledLines(clearedLines);
+			}
+			version++;
+		}
+		lockedTop = ROW_COUNT;
+		lockedBottom = -1;
+		return clearedLines;
+	}
+
+	/**
+	 * Removes the filled rows found by {@link #checkLines()} and moves down the lines above them.
+	 * Only the rows among the touched ones are moved one by one; all the rows above the topmost
+	 * touched row are moved at once
+	 * @param clearedLines - the number of filled rows
+	 */
+	private void removeFilledLines(int clearedLines) {
+		int target = clearedRows[0];
+		for (int row = target - 1; row >= lockedTop; row--) {
+			if (rows[row] != FULL_ROW) {
+				rows[target] = rows[row];
+				System.arraycopy(colors, row * COL_COUNT, colors, target * COL_COUNT, COL_COUNT);
+				target--;
+			}
+		}
+		// every row above the piece moves down by the number of cleared lines
+		System.arraycopy(rows, 0, rows, clearedLines, lockedTop);
+		System.arraycopy(colors, 0, colors, clearedLines * COL_COUNT, lockedTop * COL_COUNT);
+		Arrays.fill(rows, 0, clearedLines, EMPTY_ROW);
+		Arrays.fill(colors, 0, clearedLines * COL_COUNT, (byte) 0);
+		updateHeights();
+	}
+
+	/**
+	 * Lowers the height of the columns after lines were cleared. As the tiles can only move down, 
+	 * the search for the new topmost tile of each column starts from its previous topmost tile
+	 */
+	private void updateHeights() {
+		for (int col = 0; col < COL_COUNT; col++) {
+			int row = ROW_COUNT - heights[col];
+			while (row < ROW_COUNT && !isOccupied(col, row)) {
+				row++;
+			}
+			heights[col] = ROW_COUNT - row;
+		}
+	}
+
+	/**
+	 * Calculates how many rows a piece can fall from its position until it hits either the ground 
+	 * or another piece. As long as the piece is above the surface of the board, this only compares the 
+	 * lowermost tile of each piece column with the height of the board column. If the piece has gone 
+	 * below the surface, under an overhang, the piece is moved down one row at a time instead
+	 * @param piece - the piece to be dropped
+	 * @param col - the piece's column
+	 * @param row - the piece's row
+	 * @param pieceRotation - the piece's current rotation
+	 * @return the number of rows the piece can fall
+	 */
+	public int getDropDistance(Piece piece, int col, int row, int pieceRotation) {
+		int[] skirt = piece.getBottomSkirt(pieceRotation);
+		int distance = ROW_COUNT;
+		int rightmost = piece.getRightmostTile(pieceRotation);
+		for (int pieceCol = piece.getLeftmostTile(pieceRotation); pieceCol <= rightmost; pieceCol++) {
+			int columnTop = ROW_COUNT - heights[col + pieceCol];
+			int columnDistance = columnTop - (row + skirt[pieceCol]) - 1;
+			if (columnDistance < 0) {
+				return searchDropDistance(piece, col, row, pieceRotation);
+			}
+			distance = Math.min(distance, columnDistance);
+		}
+		return distance;
+	}
+
+	/**
+	 * Moves the piece down one row at a time until it collides
+	 * @return the number of rows the piece can fall
+	 */
+	private int searchDropDistance(Piece piece, int col, int row, int pieceRotation) {
+		int distance = 0;
+		while (isPossibleToMovePiece(piece, col, row + distance + 1, pieceRotation)) {
+			distance++;
+		}
+		return distance;
+	}
+
+	/**
+	 * @param col - the column
+	 * @return the number of rows between the floor and the topmost landed tile of the column
+	 */
+	public int getColumnHeight(int col) {
+		return heights[col];
+	}
+
+	/**
+	 * @return the rows cleared by the last call to {@link #checkLines()}, from the bottom up, 
+	 * as they were numbered before being cleared. Only the first elements, as many as 
+	 * returned by {@link #checkLines()}, are valid, and they are overwritten by the next call
+	 */
+	public int[] getClearedRows() {
+		return clearedRows;
+	}
+
+	/**
+	 * Checks if there is a piece hanging at the determined position
+	 * @param col - column to be tested
+	 * @param row - row to be tested
+	 * @return true if the tile is taken, false otherwise
+	 */
+	public boolean isOccupied(int col, int row) {
+		return (rows[row] & (1 << (col + WALL_WIDTH))) != 0;
+	}
+
+	/**
+	 * @param col - column of the tile
+	 * @param row - row of the tile
+	 * @return the piece that landed on the tile, or null if the tile is empty
+	 */
+	public Piece getTile(int col, int row) {
+		int color = colors[row * COL_COUNT + col];
+		return (color == 0) ? null : Piece.fromOrdinal(color - 1);
+	}
+
+	/**
+	 * @return the number of collision checks made so far
+	 */
+	public long getCollisionChecks() {
+		return collisionChecks;
+	}
+
+	/**
+	 * @return the number of changes made to the board so far
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Copies the color of every tile, as the ordinal of the landed piece plus one, or zero 
+	 * for empty tiles, indexed by {@code row * COL_COUNT + col}
+	 * @param destination - the array that receives the colors
+	 */
+	public void copyColors(byte[] destination) {
+		System.arraycopy(colors, 0, destination, 0, colors.length);
+	}
+}
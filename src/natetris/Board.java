@@ -2,14 +2,19 @@ package natetris;
 
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 
 import javax.swing.JPanel;
 
+import jdk.jfr.EventType;
+import natetris.jfr.RenderEvent;
+import utils.Profiler;
+import utils.TripleBuffer;
+
 /**
- * The {@code Board} class is responsible for drawing the board,  and it's pieces, on the screen, 
- * and controlling the game logic such as testing pieces location and line completeness.
+ * The {@code Board} class is responsible for drawing the board,  and it's pieces, on the screen. 
+ * The game logic such as testing pieces location and line completeness lives in {@link GameEngine}.
  *
  */
 public class Board extends JPanel {
@@ -17,19 +22,18 @@ public class Board extends JPanel {
 	private static final long serialVersionUID = 4858532419981185927L;
 	
 	/**
-	 * Fonts properties
+	 * The flight recorder event of a paint, only created while it's being recorded
 	 */
-	private static final Font LARGE_FONT = new Font("Tahoma", Font.PLAIN, 16);
-	private static final Font SMALL_FONT = new Font("Tahoma", Font.PLAIN, 11);
+	private static final EventType RENDER_EVENT = EventType.getEventType(RenderEvent.class);
 	
 	/**
 	 * The number of visible rows in the board. Two of them need to stay hid
 	 * so that the piece doesn't show up magically 
 	 */
-	public static final int HIDDEN_ROW_COUNT = 2;
-	public static final int VISIBLE_ROW_COUNT = 20;
-	public static final int ROW_COUNT = VISIBLE_ROW_COUNT + HIDDEN_ROW_COUNT;
-	public static final int COL_COUNT = 10;
+	public static final int HIDDEN_ROW_COUNT = BitBoard.HIDDEN_ROW_COUNT;
+	public static final int VISIBLE_ROW_COUNT = BitBoard.VISIBLE_ROW_COUNT;
+	public static final int ROW_COUNT = BitBoard.ROW_COUNT;
+	public static final int COL_COUNT = BitBoard.COL_COUNT;
 	
 	/**
 	 * The size of each individual tile
@@ -62,240 +66,134 @@ public class Board extends JPanel {
 	public static final int CENTER_Y = BOARD_HEIGHT / 2;
 	
 	/**
-	 * The group of tiles that compose the entire board
+	 * The snapshots of the game, published by the game thread, from which the board is drawn
 	 */
-	private Piece[][] tiles;
-	
-	private Natetris natetris;
-	
-	public Board(Natetris natetris) {
-		this.natetris = natetris;
-		tiles = new Piece[COL_COUNT][ROW_COUNT];
-		setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
-		setBackground(Color.BLACK);
-	}
-	
-	@Override
-	protected void paintComponent(Graphics g) {
-		super.paintComponent(g);
-
-		/*
-	     * Enhances drawing methods readability, by considering the 
-	     * 0,0 axis as the beginning of the border limit of the board
-	     */
-		g.translate(BORDER_WIDTH, BORDER_WIDTH);
-		
-		if (natetris.isGamePaused()) {
-			g.setFont(LARGE_FONT);
-			g.setColor(Color.WHITE);
-			String message = "Game Paused";
-			g.drawString(message, CENTER_X - g.getFontMetrics().stringWidth(message) / 2, CENTER_Y);
-		} else if (natetris.isGameOver()) {
-			g.setFont(LARGE_FONT);
-			String gameOver = "Game over :(";
-			g.drawString(gameOver, CENTER_X - g.getFontMetrics().stringWidth(gameOver) / 2, CENTER_Y - 30);
-
-			g.setFont(SMALL_FONT);
-			g.setColor(Color.WHITE);
-			String message = "To start a new game, press the ENTER key";
-			g.drawString(message, CENTER_X - g.getFontMetrics().stringWidth(message) / 2, CENTER_Y);
-		} else {
-			// game is running
-
-			// draws landed pieces
-			for (int x = 0; x < COL_COUNT; x++) {
-				for (int y = HIDDEN_ROW_COUNT; y < ROW_COUNT; y++) {
-					Piece piece = tiles[x][y];
-					if (isOccupied(x, y)) {
-						drawTile(piece, x, (y - HIDDEN_ROW_COUNT), g);
-					}
-				}
-			}
-			// draws current piece
-			Piece currentPiece = natetris.getCurrentPiece();
-			int currentDirection = natetris.getPieceRotation();
-			int currentRow = natetris.getCurrentRow();
-			int currentCol = natetris.getCurrentCol();
-			
-			for (int col = 0; col < currentPiece.getDimension(); col++) {
-				for (int row = 0; row < currentPiece.getDimension(); row++) {
-					if (currentPiece.isTile(col, row, currentDirection) && (currentRow + row) >= HIDDEN_ROW_COUNT) {
-						drawTile(currentPiece, currentCol + col, (currentRow + row - HIDDEN_ROW_COUNT), g);
-					}
-				}
-			}
-			/*
-			 * draws the semi transparent piece by going down until we find a collision, then
-			 * drawing the ghost piece
-			 */
-			for (int lowestRow = currentRow; lowestRow < ROW_COUNT; lowestRow++) {
-				if (isPossibleToMovePiece(currentPiece, currentCol, lowestRow, currentDirection)) {
-					continue;
-				}
-				
-				// the ghost piece will be drawn one row above a collision
-				lowestRow--;
-				
-				for (int col = 0; col < currentPiece.getDimension(); col++) {
-					for (int row = 0; row < currentPiece.getDimension(); row++) {
-						if (currentPiece.isTile(col, row, currentDirection)) {
-							drawTile(currentPiece, currentCol + col, (lowestRow + row - HIDDEN_ROW_COUNT), g, 0.3f);
-						}
-					}
-				}
-				break;
-			}
-			
-			// draws the board itself, which is basically made of empty squares.
-			g.setColor(Color.DARK_GRAY);
-			for (int x = 1; x < VISIBLE_ROW_COUNT; x++) {
-				g.drawLine(0, (x * TILE_SIZE), BOARD_WIDTH, (x * TILE_SIZE));
-			}
-			for (int y = 1; y < COL_COUNT; y++) {
-				g.drawLine((y * TILE_SIZE), 0, (y * TILE_SIZE), BOARD_HEIGHT);
-			}
-		}
-		// draws the board borders
-		g.setColor(Color.WHITE);
-		g.drawRect(0, 0, BOARD_WIDTH, BOARD_HEIGHT);
-	}
+	private TripleBuffer<GameSnapshot> snapshots;
 	
 	/**
-	 * Adds a piece that has either hit the ground or another piece to the board
-	 * @param piece to be added to the board
-	 * @param boardCol is the column position of the board where the piece starts
-	 * @param boardRow is the row position of the board where the piece starts
-	 * @param rotation is the current position of the piece
+	 * Draws the board from the snapshots
 	 */
-	public void addPieceToTheBoard(Piece piece, int boardCol, int boardRow, int rotation) {
-		for (int pieceCol = 0; pieceCol < piece.getDimension(); pieceCol++) {
-			for (int pieceRow = 0; pieceRow < piece.getDimension(); pieceRow++) {
-				if (piece.isTile(pieceCol, pieceRow, rotation)) {
-					addPiece(piece, boardCol + pieceCol, boardRow + pieceRow);
-				}
-			}
-		}
-	}
+	private BoardRenderer renderer;
 	
 	/**
-	 * Logically adds the piece to the board
-	 * @param piece - the piece to be added to the board
-	 * @param col - the piece's column
-	 * @param row - the piece's row
+	 * Measures how long key presses take to show, or null if they aren't measured
 	 */
-	private void addPiece(Piece piece, int col, int row) {
-		tiles[col][row] = piece;
-	}
+	private LatencyTracker latencyTracker;
 	
 	/**
-	 * Checks if it's possible to move the piece to a new position of the board.<br>
-	 * Invalid positions are anywhere outside the board or anywhere inside the board where 
-	 * there is another piece already
-	 * @param piece - the piece to be checked
-	 * @param col - the piece's column
-	 * @param row - the piece's row
-	 * @param pieceRotation - the piece's current rotation
-	 * @return true if possible to move, false otherwise
+	 * The last snapshot seen by the game thread, as far as the board is concerned, used to 
+	 * find out which parts of the board have to be drawn again
 	 */
-	public boolean isPossibleToMovePiece(Piece piece, int col, int row, int pieceRotation) {
-		// check if it is a valid column
-		if (col < (-piece.getLeftmostTile(pieceRotation)) || (col + piece.getRightmostTile(pieceRotation)) >= COL_COUNT) {
-			return false;
-		}
-		// check if it is a valid row
-		if ((row + piece.getLowermostTile(pieceRotation)) >= ROW_COUNT) {
-			return false;
-		}
-		// Checks if two pieces collided
-		for (int pieceCol = 0; pieceCol < piece.getDimension(); pieceCol++) {
-			for (int pieceRow = 0; pieceRow < piece.getDimension(); pieceRow++) {
-				if (piece.isTile(pieceCol, pieceRow, pieceRotation) && tiles[col + pieceCol][row + pieceRow] != null) {
-					return false;
-				}
-			}
-		}
-		return true;
+	private int lastState = -1;
+	private long lastBoardVersion = -1L;
+	private Piece lastPiece;
+	private int lastCol;
+	private int lastRow;
+	private int lastRotation;
+	private int lastGhostRow;
+	
+	public Board(TripleBuffer<GameSnapshot> snapshots, TileAtlas atlas) {
+		this.snapshots = snapshots;
+		setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
+		setBackground(Color.BLACK);
+		this.renderer = new BoardRenderer(atlas, getBackground());
 	}
 	
 	/**
-	 * Clears the entire board, setting all slots to null
+	 * Asks for the parts of the board that changed since the last published snapshot to be drawn again: 
+	 * the whole board when a piece has landed or the game state changed, or else only the regions 
+	 * of the falling piece and of its ghost, where they were and where they are now.
+	 * Must be called by the game thread only, after publishing the snapshot
+	 * @param snapshot - the snapshot that was just published
 	 */
-	public void clear() {
-		for (int col = 0; col < tiles.length; col++) {
-			for (int row = 0; row < tiles[col].length; row++) {
-				tiles[col][row] = null;
-			}
+	public void repaintChanges(GameSnapshot snapshot) {
+		int state = (snapshot.isFirstGame() ? 1 : 0) | (snapshot.isGamePaused() ? 2 : 0) | (snapshot.isGameOver() ? 4 : 0);
+		Piece piece = snapshot.getCurrentPiece();
+		int col = snapshot.getCurrentCol();
+		int row = snapshot.getCurrentRow();
+		int rotation = snapshot.getPieceRotation();
+		int ghostRow = snapshot.getGhostRow();
+		
+		if (state != lastState || snapshot.getBoardVersion() != lastBoardVersion || lastPiece == null || piece == null) {
+			repaint();
+		} else if (piece != lastPiece || col != lastCol || rotation != lastRotation || row != lastRow || ghostRow != lastGhostRow) {
+			repaintPiece(lastPiece, lastCol, lastRow, lastRotation);
+			repaintPiece(lastPiece, lastCol, lastGhostRow, lastRotation);
+			repaintPiece(piece, col, row, rotation);
+			repaintPiece(piece, col, ghostRow, rotation);
 		}
+		
+		if (renderer.isOverlayVisible()) {
+			repaint(BORDER_WIDTH, BORDER_WIDTH, BoardRenderer.OVERLAY_WIDTH + 1, BoardRenderer.OVERLAY_HEIGHT + 1);
+		}
+		
+		lastState = state;
+		lastBoardVersion = snapshot.getBoardVersion();
+		lastPiece = piece;
+		lastCol = col;
+		lastRow = row;
+		lastRotation = rotation;
+		lastGhostRow = ghostRow;
 	}
 	
 	/**
-	 * Checks if there are lines completely filled up, so that they can
-	 * be destroyed
-	 * @param piece - current piece at the game
-	 * @return number of rows completely filled up
+	 * @param profiler - the profiler whose measures may be shown over the board
 	 */
-	public int checkLines(Piece piece) {
-		int clearedLines = 0;
-		for (int row = 0; row < ROW_COUNT; row++) {
-			if (filledLine(row)) {
-				clearedLines++;
-			}
-		}
-		return clearedLines;
+	public void setProfiler(Profiler profiler) {
+		renderer.setProfiler(profiler);
 	}
 	
 	/**
-	 * Checks if {@code row} is completed horizontally, and then clears it out of the board
-	 * @param row - the checked row
-	 * @return true if complete, false otherwise
+	 * @param latencyTracker - measures how long key presses take to show, once they're drawn
 	 */
-	private boolean filledLine(int row) {
-		for (int col = 0; col < COL_COUNT; col++) {
-			if (!isOccupied(col, row)) {
-				return false;
-			}
-		}
-		// lines is filled up, so we move down all the lines above it
-		for (int unfilledRow = row; unfilledRow > 0; unfilledRow--) {
-			for (int col = 0; col < COL_COUNT; col++) {
-				tiles[col][unfilledRow] = tiles[col][unfilledRow-1];
-			}
-		}
-		return true;
+	public void setLatencyTracker(LatencyTracker latencyTracker) {
+		this.latencyTracker = latencyTracker;
+		renderer.setLatencyTracker(latencyTracker);
 	}
 	
 	/**
-	 * Checks if there is a piece hanging at the determined position
-	 * @param x - column to be tested
-	 * @param y - row to be tested
-	 * @return
+	 * Shows the profiler overlay if hidden, or hides it if shown
 	 */
-	private boolean isOccupied(int x, int y) {
-		return (tiles[x][y] != null);
+	public void toggleProfilerOverlay() {
+		renderer.toggleOverlay();
+		repaint();
 	}
 	
 	/**
-	 * Draws each tile that makes up {@code piece}
-	 * @param piece - the piece from which the tile is part of
-	 * @param x - the row that the tile is going to be drawn
-	 * @param y - the column that the tile is going to be drawn
-	 * @param g - graphics variable
-	 */
-	private void drawTile(Piece piece, int x, int y, Graphics g) {
-		g.setColor(piece.getColor());
-		g.fillRect(x * TILE_SIZE, y * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+	 * Asks for the rectangle that bounds a piece to be drawn again
+	 * @param piece - the piece
+	 * @param col - the piece's column
+	 * @param row - the piece's row
+	 * @param rotation - the piece's rotation
+	 */
+	private void repaintPiece(Piece piece, int col, int row, int rotation) {
+		int left = piece.getLeftmostTile(rotation);
+		int top = piece.getTopmostTile(rotation);
+		int width = piece.getRightmostTile(rotation) - left + 1;
+		int height = piece.getLowermostTile(rotation) - top + 1;
+		repaint(BORDER_WIDTH + (col + left) * TILE_SIZE, BORDER_WIDTH + (row + top - HIDDEN_ROW_COUNT) * TILE_SIZE, 
+				width * TILE_SIZE, height * TILE_SIZE);
 	}
 	
-	/**
-	 * Draws each tile that makes up {@code piece}
-	 * @param piece - the piece from which the tile is part of
-	 * @param x - the row that the tile is going to be drawn
-	 * @param y - the column that the tile is going to be drawn
-	 * @param g - graphics variable
-	 * @param alpha - the alpha value of the pieces color 
-	 */
-	private void drawTile(Piece piece, int x, int y, Graphics g, float alpha) {
-		g.setColor(piece.getGhostColor(alpha));
-		g.fillRect(x * TILE_SIZE, y * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+	@Override
+	protected void paintComponent(Graphics g) {
+		RenderEvent event = RENDER_EVENT.isEnabled() ? new RenderEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		super.paintComponent(g);
+		GameSnapshot snapshot = snapshots.acquire();
+		if (renderer.paint(g, snapshot, getGraphicsConfiguration())) {
+			repaint();
+		} else if (latencyTracker != null) {
+			latencyTracker.frameShown(snapshot);
+		}
+		if (event != null && event.shouldCommit()) {
+			Rectangle clip = g.getClipBounds();
+			event.component = "Board";
+			event.width = (clip != null) ? clip.width : getWidth();
+			event.height = (clip != null) ? clip.height : getHeight();
+			event.commit();
+		}
 	}
 }
@@ -0,0 +1,155 @@
+package natetris;
+
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+import jdk.jfr.EventType;
+import natetris.jfr.RenderEvent;
+import utils.Profiler;
+
+/**
+ * The {@code BoardCanvas} class draws the board actively: instead of asking Swing to repaint it, the game
+ * loop draws every frame into the back buffer of a {@code BufferStrategy} and shows it right away, so
+ * frames are presented exactly when the loop renders them. As the board is drawn on every frame,
+ * the falling piece slides between rows instead of jumping from one to the next.<br>
+ * The buffers are page flipped where the graphics pipeline supports it, such as with
+ * {@code -Dsun.java2d.opengl=true}, and copied to the screen otherwise. Only flips can be synchronized
+ * to the vertical blank, and only if the driver does so: copied frames, which the loop paces by itself
+ * at the refresh rate, may tear.
+ */
+public class BoardCanvas extends Canvas {
+
+	private static final long serialVersionUID = -2718513904637151022L;
+
+	/**
+	 * The number of buffers to draw into, which is triple buffering whenever the screen supports it
+	 */
+	private static final int BUFFER_COUNT = 3;
+
+	/**
+	 * The flight recorder event of a frame, only created while it's being recorded
+	 */
+	private static final EventType RENDER_EVENT = EventType.getEventType(RenderEvent.class);
+
+	/**
+	 * Draws the board from the snapshots
+	 */
+	private BoardRenderer renderer;
+
+	/**
+	 * Measures how long key presses take to show, or null if they aren't measured
+	 */
+	private LatencyTracker latencyTracker;
+
+	/**
+	 * @param atlas - the tiles the pieces are drawn with. As the canvas is drawn by the game thread,
+	 * it must not be shared with components painted by the event dispatch thread
+	 */
+	public BoardCanvas(TileAtlas atlas) {
+		setPreferredSize(new Dimension(Board.PANEL_WIDTH, Board.PANEL_HEIGHT));
+		setBackground(Color.BLACK);
+		setIgnoreRepaint(true); // the game loop draws every frame, so repaints by the system are useless
+		setFocusable(false); // keys go to the window
+		this.renderer = new BoardRenderer(atlas, getBackground());
+		renderer.setInterpolating(true);
+	}
+
+	/**
+	 * @param profiler - the profiler whose measures may be shown over the board
+	 */
+	public void setProfiler(Profiler profiler) {
+		renderer.setProfiler(profiler);
+	}
+
+	/**
+	 * @param latencyTracker - measures how long key presses take to show, once they're on the screen
+	 */
+	public void setLatencyTracker(LatencyTracker latencyTracker) {
+		this.latencyTracker = latencyTracker;
+		renderer.setLatencyTracker(latencyTracker);
+	}
+
+	/**
+	 * Shows the profiler overlay if hidden, or hides it if shown
+	 */
+	public void toggleProfilerOverlay() {
+		renderer.toggleOverlay();
+	}
+
+	/**
+	 * Creates the buffers of the canvas, flipping them if possible, or else copying them,
+	 * the way {@code createBufferStrategy(int)} picks it
+	 * @return the buffers
+	 */
+	private BufferStrategy createStrategy() {
+		/*
+		 * Every frame is drawn all over, so what the back buffer holds after a flip doesn't matter,
+		 * which lets the pipeline pick its cheapest flip
+		 */
+		BufferCapabilities flipping = new BufferCapabilities(new ImageCapabilities(true), new ImageCapabilities(true),
+				BufferCapabilities.FlipContents.UNDEFINED);
+		try {
+			createBufferStrategy(BUFFER_COUNT, flipping);
+		} catch (AWTException e) {
+			createBufferStrategy(BUFFER_COUNT);
+		}
+		return getBufferStrategy();
+	}
+
+	/**
+	 * Draws a frame and shows it. Must be called by the game thread only
+	 * @param snapshot - the snapshot to be drawn
+	 */
+	public void render(GameSnapshot snapshot) {
+		if (!isShowing()) {
+			return;
+		}
+		BufferStrategy strategy = getBufferStrategy();
+		if (strategy == null) {
+			strategy = createStrategy();
+		}
+		RenderEvent event = RENDER_EVENT.isEnabled() ? new RenderEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+
+		/*
+		 * The buffers may be lost at any time, such as when the screen mode changes,
+		 * in which case the frame is drawn all over again
+		 */
+		do {
+			boolean isAtlasLost;
+			do {
+				Graphics g = strategy.getDrawGraphics();
+				try {
+					g.setColor(getBackground());
+					g.fillRect(0, 0, getWidth(), getHeight());
+					isAtlasLost = renderer.paint(g, snapshot, getGraphicsConfiguration());
+				} finally {
+					g.dispose();
+				}
+			} while (isAtlasLost || strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+
+		// flushes the drawing commands, as some window systems buffer them
+		Toolkit.getDefaultToolkit().sync();
+		if (latencyTracker != null) {
+			latencyTracker.frameShown(snapshot);
+		}
+
+		if (event != null && event.shouldCommit()) {
+			event.component = "BoardCanvas";
+			event.width = getWidth();
+			event.height = getHeight();
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package natetris;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import utils.Histogram;
+import utils.Profiler;
+
+/**
+ * The {@code BoardRenderer} class draws the board from a {@link GameSnapshot}, whatever it's drawn on:
+ * the {@link Board} panel, painted by Swing, or the {@link BoardCanvas}, drawn by the game loop itself.
+ * The board is drawn in layers, so that only what moves is drawn on every frame.
+ */
+public class BoardRenderer {
+
+	/**
+	 * Constants of the board, used throughout the renderer for layout
+	 */
+	private static final int HIDDEN_ROW_COUNT = Board.HIDDEN_ROW_COUNT;
+	private static final int VISIBLE_ROW_COUNT = Board.VISIBLE_ROW_COUNT;
+	private static final int ROW_COUNT = Board.ROW_COUNT;
+	private static final int COL_COUNT = Board.COL_COUNT;
+	private static final int TILE_SIZE = Board.TILE_SIZE;
+	private static final int BORDER_WIDTH = Board.BORDER_WIDTH;
+	private static final int BOARD_WIDTH = Board.BOARD_WIDTH;
+	private static final int BOARD_HEIGHT = Board.BOARD_HEIGHT;
+	private static final int CENTER_X = Board.CENTER_X;
+	private static final int CENTER_Y = Board.CENTER_Y;
+
+	/**
+	 * Fonts properties
+	 */
+	private static final Font LARGE_FONT = new Font("Tahoma", Font.PLAIN, 16);
+	private static final Font SMALL_FONT = new Font("Tahoma", Font.PLAIN, 11);
+	private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+	/**
+	 * The profiler overlay: its size, the spacing of its lines, and how often its text is
+	 * formatted again, so that drawing it doesn't allocate on every frame
+	 */
+	public static final int OVERLAY_LINE_HEIGHT = 13;
+	public static final int OVERLAY_WIDTH = Board.BOARD_WIDTH;
+	public static final int OVERLAY_HEIGHT = OVERLAY_LINE_HEIGHT * 6 + 6;
+	private static final long OVERLAY_REFRESH_NANOS = 500000000L;
+	private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 190);
+
+	/**
+	 * The pre-shaded tiles the pieces are drawn with
+	 */
+	private final TileAtlas atlas;
+
+	/**
+	 * The color of the empty board
+	 */
+	private final Color background;
+
+	/**
+	 * Represents if the falling piece is drawn between rows, according to how far it is
+	 * from falling one more row, instead of snapping from one row to the next
+	 */
+	private boolean isInterpolating;
+
+	/**
+	 * The grid and the borders of the board, drawn once over everything else
+	 */
+	private BufferedImage gridLayer;
+
+	/**
+	 * The landed pieces, over an empty board. This layer is only drawn again when the
+	 * board changes, that is, whenever a piece lands or lines are cleared
+	 */
+	private BufferedImage tileLayer;
+	private long tileLayerVersion = -1L;
+
+	/**
+	 * The profiler whose measures are shown over the board, whether they're shown,
+	 * and the text of the overlay as of its last refresh
+	 */
+	private Profiler profiler;
+	private volatile boolean isOverlayVisible;
+	private final String[] overlayText = new String[6];
+	private long overlayRefreshTime;
+
+	/**
+	 * Measures how long key presses take to show, shown on the last line of the overlay
+	 */
+	private LatencyTracker latencyTracker;
+
+	/**
+	 * @param atlas - the tiles the pieces are drawn with
+	 * @param background - the color of the empty board
+	 */
+	public BoardRenderer(TileAtlas atlas, Color background) {
+		this.atlas = atlas;
+		this.background = background;
+	}
+
+	/**
+	 * @param state - true to draw the falling piece between rows, false to draw it on its row
+	 */
+	public void setInterpolating(boolean state) {
+		this.isInterpolating = state;
+	}
+
+	/**
+	 * @param profiler - the profiler whose measures may be shown over the board
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * @param latencyTracker - the input latency measures that may be shown over the board
+	 */
+	public void setLatencyTracker(LatencyTracker latencyTracker) {
+		this.latencyTracker = latencyTracker;
+	}
+
+	/**
+	 * Shows the profiler overlay if hidden, or hides it if shown. May be called from any thread
+	 */
+	public void toggleOverlay() {
+		isOverlayVisible = !isOverlayVisible;
+		overlayRefreshTime = 0L;
+	}
+
+	/**
+	 * @return true if the profiler overlay is shown
+	 */
+	public boolean isOverlayVisible() {
+		return isOverlayVisible && profiler != null;
+	}
+
+	/**
+	 * Draws the board, including its border, with its upper left corner at 0,0
+	 * @param g - graphics variable
+	 * @param snapshot - the snapshot to be drawn
+	 * @param configuration - the configuration of the screen, or null if not drawing to the screen
+	 * @return true if the frame was drawn with tiles that got lost meanwhile, and must be drawn again
+	 */
+	public boolean paint(Graphics g, GameSnapshot snapshot, GraphicsConfiguration configuration) {
+		atlas.validate(configuration);
+
+		/*
+		 * Enhances drawing methods readability, by considering the
+		 * 0,0 axis as the beginning of the border limit of the board
+		 */
+		g.translate(BORDER_WIDTH, BORDER_WIDTH);
+		try {
+			boolean isAtlasLost = paintState(g, snapshot, configuration);
+			if (isOverlayVisible()) {
+				paintOverlay(g);
+			}
+			return isAtlasLost;
+		} finally {
+			g.translate(-BORDER_WIDTH, -BORDER_WIDTH);
+		}
+	}
+
+	/**
+	 * Draws the board according to the state of the game
+	 * @param g - graphics variable, translated to the border limit of the board
+	 * @param snapshot - the snapshot to be drawn
+	 * @param configuration - the configuration of the screen, or null if not drawing to the screen
+	 * @return true if the frame was drawn with tiles that got lost meanwhile, and must be drawn again
+	 */
+	private boolean paintState(Graphics g, GameSnapshot snapshot, GraphicsConfiguration configuration) {
+		if (snapshot.isGamePaused()) {
+			g.setFont(LARGE_FONT);
+			g.setColor(Color.WHITE);
+			String message = "Game Paused";
+			g.drawString(message, CENTER_X - g.getFontMetrics().stringWidth(message) / 2, CENTER_Y);
+		} else if (snapshot.isGameOver()) {
+			g.setFont(LARGE_FONT);
+			String gameOver = "Game over :(";
+			g.drawString(gameOver, CENTER_X - g.getFontMetrics().stringWidth(gameOver) / 2, CENTER_Y - 30);
+
+			g.setFont(SMALL_FONT);
+			g.setColor(Color.WHITE);
+			String message = "To start a new game, press the ENTER key";
+			g.drawString(message, CENTER_X - g.getFontMetrics().stringWidth(message) / 2, CENTER_Y);
+		} else if (!snapshot.isFirstGame()) {
+			return paintGame(g, snapshot, configuration);
+		}
+		// draws the board borders
+		g.setColor(Color.WHITE);
+		g.drawRect(0, 0, BOARD_WIDTH, BOARD_HEIGHT);
+		return false;
+	}
+
+	/**
+	 * Draws a running game
+	 * @param g - graphics variable, translated to the border limit of the board
+	 * @param snapshot - the snapshot to be drawn
+	 * @param configuration - the configuration of the screen, or null if not drawing to the screen
+	 * @return true if the frame was drawn with tiles that got lost meanwhile, and must be drawn again
+	 */
+	private boolean paintGame(Graphics g, GameSnapshot snapshot, GraphicsConfiguration configuration) {
+		// draws landed pieces
+		if (tileLayer == null || tileLayerVersion != snapshot.getBoardVersion()) {
+			drawTileLayer(snapshot, configuration);
+		}
+		g.drawImage(tileLayer, 0, 0, null);
+
+		// draws current piece
+		Piece currentPiece = snapshot.getCurrentPiece();
+		int currentDirection = snapshot.getPieceRotation();
+		int currentRow = snapshot.getCurrentRow();
+		int currentCol = snapshot.getCurrentCol();
+		int ghostRow = snapshot.getGhostRow();
+
+		/*
+		 * the piece is moved down towards the next row only while it still has room to fall
+		 */
+		int fallOffset = 0;
+		if (isInterpolating && ghostRow > currentRow) {
+			fallOffset = (int) (snapshot.getFallProgress() * TILE_SIZE);
+		}
+
+		int[] tileCols = currentPiece.getTileCols(currentDirection);
+		int[] tileRows = currentPiece.getTileRows(currentDirection);
+		for (int tile = 0; tile < Piece.TILE_COUNT; tile++) {
+			if ((currentRow + tileRows[tile]) >= HIDDEN_ROW_COUNT) {
+				atlas.drawTile(g, currentPiece, false, (currentCol + tileCols[tile]) * TILE_SIZE,
+						(currentRow + tileRows[tile] - HIDDEN_ROW_COUNT) * TILE_SIZE + fallOffset);
+			}
+		}
+		/*
+		 * draws the semi transparent piece where the current piece would land
+		 */
+		for (int tile = 0; tile < Piece.TILE_COUNT; tile++) {
+			atlas.drawTile(g, currentPiece, true, (currentCol + tileCols[tile]) * TILE_SIZE,
+					(ghostRow + tileRows[tile] - HIDDEN_ROW_COUNT) * TILE_SIZE);
+		}
+
+		// draws the board itself, which is basically made of empty squares, and its borders
+		if (gridLayer == null) {
+			drawGridLayer(configuration);
+		}
+		g.drawImage(gridLayer, 0, 0, null);
+
+		// the accelerated tiles were lost while drawing, so the whole frame is drawn again
+		if (atlas.contentsLost()) {
+			tileLayerVersion = -1L;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Draws the measures of the profiler over the upper part of the board
+	 * @param g - graphics variable, translated to the border limit of the board
+	 */
+	private void paintOverlay(Graphics g) {
+		long now = System.nanoTime();
+		if (overlayRefreshTime == 0L || now - overlayRefreshTime > OVERLAY_REFRESH_NANOS) {
+			overlayRefreshTime = now;
+			overlayText[0] = "           p50     p99     max";
+			overlayText[1] = formatTimes("update", profiler.getUpdateTimes());
+			overlayText[2] = formatTimes("render", profiler.getRenderTimes());
+			overlayText[3] = formatTimes("sleep", profiler.getSleepOvershoots());
+			Histogram allocations = profiler.getAllocations();
+			overlayText[4] = profiler.isMeasuringAllocations()
+					? String.format("%-6s %7d %7d %7d B", "alloc", allocations.getPercentile(50.0),
+							allocations.getPercentile(99.0), allocations.getMaxValue())
+					: "alloc  not supported by this JVM";
+			overlayText[5] = (latencyTracker != null) ? formatTimes("input", latencyTracker.getTotalDelays()) : "";
+		}
+		g.setColor(OVERLAY_BACKGROUND);
+		g.fillRect(1, 1, OVERLAY_WIDTH - 1, OVERLAY_HEIGHT);
+		g.setFont(OVERLAY_FONT);
+		g.setColor(Color.GREEN);
+		for (int line = 0; line < overlayText.length; line++) {
+			g.drawString(overlayText[line], 4, OVERLAY_LINE_HEIGHT * (line + 1));
+		}
+	}
+
+	/**
+	 * @param name - the name of the measure
+	 * @param times - the times measured, in nanoseconds
+	 * @return a line of the overlay, with the times in milliseconds
+	 */
+	private static String formatTimes(String name, Histogram times) {
+		return String.format("%-6s %7.2f %7.2f %7.2f ms", name, times.getPercentile(50.0) / 1e6,
+				times.getPercentile(99.0) / 1e6, times.getMaxValue() / 1e6);
+	}
+
+	/**
+	 * Draws the grid and the borders of the board into their layer
+	 * @param configuration - the configuration of the screen, or null if not drawing to the screen
+	 */
+	private void drawGridLayer(GraphicsConfiguration configuration) {
+		gridLayer = createLayer(configuration, BOARD_WIDTH + 1, BOARD_HEIGHT + 1, Transparency.BITMASK);
+		Graphics g = gridLayer.getGraphics();
+		g.setColor(Color.DARK_GRAY);
+		for (int x = 1; x < VISIBLE_ROW_COUNT; x++) {
+			g.drawLine(0, (x * TILE_SIZE), BOARD_WIDTH, (x * TILE_SIZE));
+		}
+		for (int y = 1; y < COL_COUNT; y++) {
+			g.drawLine((y * TILE_SIZE), 0, (y * TILE_SIZE), BOARD_HEIGHT);
+		}
+		g.setColor(Color.WHITE);
+		g.drawRect(0, 0, BOARD_WIDTH, BOARD_HEIGHT);
+		g.dispose();
+	}
+
+	/**
+	 * Draws the landed pieces of a snapshot into their layer
+	 * @param snapshot - the snapshot holding the landed pieces
+	 * @param configuration - the configuration of the screen, or null if not drawing to the screen
+	 */
+	private void drawTileLayer(GameSnapshot snapshot, GraphicsConfiguration configuration) {
+		if (tileLayer == null) {
+			tileLayer = createLayer(configuration, BOARD_WIDTH, BOARD_HEIGHT, Transparency.OPAQUE);
+		}
+		Graphics g = tileLayer.getGraphics();
+		g.setColor(background);
+		g.fillRect(0, 0, BOARD_WIDTH, BOARD_HEIGHT);
+		for (int x = 0; x < COL_COUNT; x++) {
+			for (int y = HIDDEN_ROW_COUNT; y < ROW_COUNT; y++) {
+				Piece piece = snapshot.getTile(x, y);
+				if (piece != null) {
+					atlas.drawTile(g, piece, false, x * TILE_SIZE, (y - HIDDEN_ROW_COUNT) * TILE_SIZE);
+				}
+			}
+		}
+		g.dispose();
+		tileLayerVersion = snapshot.getBoardVersion();
+	}
+
+	/**
+	 * Creates an image in the format of the screen, so that drawing it is as cheap as possible
+	 * @param configuration - the configuration of the screen, or null if not drawing to the screen
+	 * @param width - width of the image
+	 * @param height - height of the image
+	 * @param transparency - the transparency of the image
+	 * @return a new image
+	 */
+	private static BufferedImage createLayer(GraphicsConfiguration configuration, int width, int height, int transparency) {
+		if (configuration != null) {
+			return configuration.createCompatibleImage(width, height, transparency);
+		}
+		int type = (transparency == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+		return new BufferedImage(width, height, type);
+	}
+}
@@ -0,0 +1,481 @@
+package natetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * The {@code GameEngine} class holds the rules of the game: the falling piece, the board, the score
+ * and the game speed. It has no dependency on AWT or Swing and no notion of time, so it advances only
+ * when told to: {@link #step(Action)} applies a player action and {@link #tick()} makes the current piece
+ * fall one row. This allows it to run headless, as fast as the CPU allows, as well as behind a window.
+ */
+public class GameEngine {
+
+	/**
+	 * The quantity of different kinds of pieces
+	 */
+	public static final int PIECES_COUNT = Piece.values().length;
+
+	/**
+	 * The speed, in rows per second, in which pieces fall when a game starts
+	 */
+	public static final float DEFAULT_SPEED = 1.0f;
+
+	/**
+	 * The number of pieces known in advance, unless another one is asked for
+	 */
+	public static final int DEFAULT_PREVIEW_SIZE = 1;
+
+	/**
+	 * The version of the rules, written in every {@link Replay}. It must be increased whenever the rules change
+	 * in a way that would make a game play differently from the same seed and actions
+	 */
+	public static final int RULES_VERSION = 1;
+
+	/**
+	 * The actions a player can take
+	 */
+	public enum Action {
+		MOVE_LEFT,
+		MOVE_RIGHT,
+		ROTATE_CLOCKWISE,
+		ROTATE_ANTICLOCKWISE,
+		HARD_DROP,
+		TOGGLE_PAUSE,
+		NEW_GAME
+	}
+
+	/**
+	 * Receives the notifications of the engine, so that whoever is driving it
+	 * (a window, a simulation) can react to what happened in the game
+	 */
+	public interface Listener {
+
+		/**
+		 * Called whenever the falling piece hits either the ground or another piece
+		 * @param clearedRows - the rows cleared by the piece, from the bottom up, as they were numbered 
+		 * before being cleared. The array is reused, so it's only valid during the call
+		 * @param clearedLines - the number of lines cleared by the piece, if any, which is 
+		 * the number of valid elements of {@code clearedRows}
+		 */
+		void pieceLocked(int[] clearedRows, int clearedLines);
+
+		/**
+		 * Called whenever a new game starts
+		 */
+		void gameStarted();
+
+		/**
+		 * Called whenever the game is paused or resumed
+		 * @param state - true if the game was paused, false otherwise
+		 */
+		void gamePaused(boolean state);
+	}
+
+	/**
+	 * Listener used when nobody is interested in the engine's notifications
+	 */
+	private static final Listener NO_LISTENER = new Listener() {
+
+		@Override
+		public void pieceLocked(int[] clearedRows, int clearedLines) {
+		}
+
+		@Override
+		public void gameStarted() {
+		}
+
+		@Override
+		public void gamePaused(boolean state) {
+		}
+	};
+
+	/**
+	 * Game control variables.
+	 * isFirstGame represents if the game hasn't started yet. Occurs only when the game is launched
+	 */
+	private boolean isFirstGame;
+	private boolean isGamePaused;
+	private boolean isGameOver;
+
+	/**
+	 * The column that the current piece is located
+	 */
+	private int currentCol;
+
+	/**
+	 * The row that the current piece is located
+	 */
+	private int currentRow;
+
+	/**
+	 * The falling piece current rotation
+	 */
+	private int currentRotation;
+
+	/**
+	 * The row where the current piece would land if dropped. It only changes when the piece moves 
+	 * sideways, rotates or is replaced, so it's calculated lazily and kept until then
+	 */
+	private int ghostRow;
+	private boolean isGhostRowValid;
+
+	/**
+	 * The speed of the game, in rows per second. It increases a bit every time a piece lands
+	 */
+	private float defaultSpeed = DEFAULT_SPEED;
+
+	/**
+	 * Common use variables
+	 */
+	private final BitBoard board;
+	private Piece currentPiece;
+	private int score;
+	private Listener listener;
+
+	/**
+	 * Picks the pieces, and the seeds of the games started without one, along with the seed of the current game
+	 */
+	private final PieceGenerator generator;
+	private final SplittableRandom seeds = new SplittableRandom();
+	private long seed;
+
+	/**
+	 * The pieces that come after the current one, in the order they'll fall, as a ring starting at {@code previewStart}
+	 */
+	private final Piece[] preview;
+	private int previewStart;
+
+	public GameEngine() {
+		this(NO_LISTENER);
+	}
+
+	public GameEngine(Listener listener) {
+		this(listener, new UniformPieceGenerator(), DEFAULT_PREVIEW_SIZE);
+	}
+
+	/**
+	 * @param listener - receives the notifications of the engine
+	 * @param generator - picks the pieces
+	 * @param previewSize - the number of pieces known in advance, at least 1
+	 */
+	public GameEngine(Listener listener, PieceGenerator generator, int previewSize) {
+		if (previewSize < 1) {
+			throw new IllegalArgumentException("The preview must have at least one piece, got " + previewSize);
+		}
+		this.board = new BitBoard();
+		this.generator = generator;
+		this.preview = new Piece[previewSize];
+		this.isFirstGame = true;
+		setListener(listener);
+	}
+
+	/**
+	 * Applies an action taken by the player. Actions that make no sense at the moment,
+	 * such as moving a piece while the game is paused, are ignored
+	 * @param action - the action to be applied
+	 * @return true if the action changed the game, false otherwise
+	 */
+	public boolean step(Action action) {
+		switch (action) {
+			case NEW_GAME:
+				if (isFirstGame || isGameOver) {
+					resetGame();
+					return true;
+				}
+				return false;
+
+			case TOGGLE_PAUSE:
+				if (isFirstGame || isGameOver) {
+					return false;
+				}
+				setGamePaused(!isGamePaused);
+				return true;
+
+			default:
+				break;
+		}
+
+		if (!isGameRunning()) {
+			return false;
+		}
+
+		switch (action) {
+			case MOVE_LEFT:
+				return movePiece(-1);
+			case MOVE_RIGHT:
+				return movePiece(1);
+			case ROTATE_CLOCKWISE:
+				return rotateCurrentPiece((currentRotation == 3) ? 0 : currentRotation+1);
+			case ROTATE_ANTICLOCKWISE:
+				return rotateCurrentPiece((currentRotation == 0) ? 3 : currentRotation-1);
+			case HARD_DROP:
+				hardDrop();
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Makes the current piece fall one row. If it can't fall any more, the piece is added to the board,
+	 * the filled lines are cleared and a new piece is spawned.
+	 */
+	public void tick() {
+		if (!isGameRunning()) {
+			return;
+		}
+
+		if (board.isPossibleToMovePiece(currentPiece, currentCol, currentRow + 1, currentRotation)) {
+			currentRow++;
+		} else {
+			/*
+			 * Piece either hit the ground or another piece, so we add it to the board and get a new one :-)
+			 */
+			board.addPieceToTheBoard(currentPiece, currentCol, currentRow, currentRotation);
+
+			/*
+			 * Get the number of lines that were cleared out of the board, if any
+			 */
+			int clearedLines = board.checkLines();
+			if (clearedLines > 0) {
+				/*
+				 * Get our score updated by shifting left the default value by the number of cleared lines
+				 */
+				score += 75 << clearedLines;
+			}
+
+			/*
+			 * Increase the default speed a bit so that the game doesn't get tedious
+			 */
+			increaseGameSpeed();
+
+			spawnNewPiece();
+			listener.pieceLocked(board.getClearedRows(), clearedLines);
+		}
+	}
+
+	/**
+	 * Drops the current piece straight to where it would land, and locks it there
+	 */
+	private void hardDrop() {
+		currentRow = getGhostRow();
+		tick();
+	}
+
+	/**
+	 * Increases speed taking in consideration the current score. The higher the score,
+	 * the higher the speed.
+	 */
+	private void increaseGameSpeed() {
+		if (score > 1000 && score < 2000) {
+			defaultSpeed += 0.002f;
+		} else if (score > 2000 && score < 4000) {
+			defaultSpeed += 0.005f;
+		} else {
+			defaultSpeed += 0.01f;
+		}
+	}
+
+	/**
+	 * Sets all default variables to their initial values and starts a new game, with a seed of its own
+	 */
+	public void resetGame() {
+		resetGame(seeds.nextLong());
+	}
+
+	/**
+	 * Sets all default variables to their initial values and starts a new game. 
+	 * Games started with the same seed get the same pieces
+	 * @param seed - the seed of the pieces
+	 */
+	public void resetGame(long seed) {
+		this.isFirstGame = false;
+		this.isGameOver = false;
+		this.isGamePaused = false;
+		this.score = 0;
+		this.seed = seed;
+		generator.setSeed(seed);
+		for (int i = 0; i < preview.length; i++) {
+			preview[i] = generator.next();
+		}
+		this.previewStart = 0;
+		this.board.clear();
+		this.defaultSpeed = DEFAULT_SPEED;
+		spawnNewPiece();
+		listener.gameStarted();
+	}
+
+	/**
+	 * Takes the next piece out of the preview, as the current one, and adds a new piece at its end
+	 */
+	private void spawnNewPiece() {
+		this.currentPiece = preview[previewStart];
+		preview[previewStart] = generator.next();
+		previewStart = (previewStart + 1) % preview.length;
+		this.currentRotation = 0;
+		this.currentCol = currentPiece.getSpawnCol();
+		this.currentRow = currentPiece.getSpawnRow();
+		this.isGhostRowValid = false;
+
+		/*
+		 * if current piece already spawned in an invalid location, the game is over
+		 */
+		if (!board.isPossibleToMovePiece(currentPiece, currentCol, currentRow, currentRotation)) {
+			isGameOver = true;
+		}
+	}
+
+	/**
+	 * Moves the current piece sideways, if there is room for it
+	 * @param direction - -1 to move left, 1 to move right
+	 * @return true if the piece moved, false otherwise
+	 */
+	private boolean movePiece(int direction) {
+		if (board.isPossibleToMovePiece(currentPiece, currentCol + direction, currentRow, currentRotation)) {
+			currentCol += direction;
+			isGhostRowValid = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Rotates the piece to a new direction (clockwise or anticlockwise). If, with the new direction,
+	 * the piece overlaps the board, it is moved accordingly to the center of the board so that it doesn't
+	 * go out of bounds.
+	 * @param newDirection is the direction in which the piece will be rotated
+	 * @return true if the piece was rotated, false otherwise
+	 */
+	private boolean rotateCurrentPiece(int newDirection) {
+		/*
+		 * newCol is used to rearrange the piece's location
+		 * if it's rotated near enough the edge,
+		 * so that the piece doesn't clip out of the board
+		 */
+		int newCol = currentCol;
+		int newRow = currentRow;
+
+		/*
+		 * get the insets of the piece to check if the piece clips out of the board
+		 */
+		int left = currentPiece.getLeftmostTile(newDirection);
+		int right = currentPiece.getRightmostTile(newDirection);
+
+		// avoids the piece from overflowing the board when rotated near left edge
+		if ((newCol + left) < 0) {
+			newCol = -left;
+		}
+
+		// avoids the piece from overflowing the board when rotated near right edge
+		if ((newCol + right) >= BitBoard.COL_COUNT) {
+			newCol = BitBoard.COL_COUNT - 1 - right;
+		}
+
+		if (board.isPossibleToMovePiece(currentPiece,  newCol, newRow, newDirection)) {
+			this.currentRotation = newDirection;
+			this.currentCol = newCol;
+			this.currentRow = newRow;
+			this.isGhostRowValid = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Pauses or resumes the game
+	 * @param state
+	 */
+	private void setGamePaused(boolean state) {
+		isGamePaused = state;
+		listener.gamePaused(state);
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = (listener != null) ? listener : NO_LISTENER;
+	}
+
+	public boolean isGamePaused() {
+		return isGamePaused;
+	}
+
+	public boolean isGameOver() {
+		return isGameOver;
+	}
+
+	public boolean isFirstGame() {
+		return isFirstGame;
+	}
+
+	public boolean isGameRunning() {
+		return !(isFirstGame || isGameOver || isGamePaused);
+	}
+
+	public BitBoard getBoard() {
+		return board;
+	}
+
+	public Piece getCurrentPiece() {
+		return currentPiece;
+	}
+
+	public Piece getNextPiece() {
+		return preview[previewStart];
+	}
+
+	/**
+	 * @param index - the position of the piece in the preview, from 0 for the next piece to fall,
+	 * up to {@link #getPreviewSize()} - 1
+	 * @return the piece that falls {@code index + 1} pieces after the current one
+	 */
+	public Piece getPreviewPiece(int index) {
+		return preview[(previewStart + index) % preview.length];
+	}
+
+	/**
+	 * @return the number of pieces known in advance
+	 */
+	public int getPreviewSize() {
+		return preview.length;
+	}
+
+	/**
+	 * @return the seed the current game was started with
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getScore() {
+		return score;
+	}
+
+	public int getCurrentCol() {
+		return currentCol;
+	}
+
+	public int getCurrentRow() {
+		return currentRow;
+	}
+
+	public int getPieceRotation() {
+		return currentRotation;
+	}
+
+	/**
+	 * @return the row where the current piece would land if dropped
+	 */
+	public int getGhostRow() {
+		if (!isGhostRowValid) {
+			ghostRow = currentRow + board.getDropDistance(currentPiece, currentCol, currentRow, currentRotation);
+			isGhostRowValid = true;
+		}
+		return ghostRow;
+	}
+
+	/**
+	 * @return the speed of the game, in rows per second
+	 */
+	public float getGameSpeed() {
+		return defaultSpeed;
+	}
+}
@@ -0,0 +1,167 @@
+package natetris;
+
+/**
+ * The {@code GameSnapshot} class is a copy of everything needed to draw one frame of the game.
+ * Snapshots are captured by the game thread and then handed to the rendering thread, which only reads
+ * them, so that a frame never shows the game halfway through an update. They're pooled and reused:
+ * capturing a snapshot allocates nothing, and the board is only copied when it has changed.
+ */
+public class GameSnapshot {
+
+	/**
+	 * Game control variables
+	 */
+	private boolean isFirstGame = true;
+	private boolean isGamePaused;
+	private boolean isGameOver;
+
+	/**
+	 * The falling piece, its position and rotation, and the row where it would land
+	 */
+	private Piece currentPiece;
+	private int currentCol;
+	private int currentRow;
+	private int currentRotation;
+	private int ghostRow;
+	
+	/**
+	 * How far the falling piece is from falling one more row, from 0 to 1
+	 */
+	private float fallProgress;
+
+	private Piece nextPiece;
+	private long score;
+	
+	/**
+	 * The stamps of the last key event that changed the game, in nanoseconds: when it happened, 
+	 * when it was applied, and when the update that applied it was over. All zero until then
+	 */
+	private long inputTime;
+	private long inputAppliedTime;
+	private long inputTickedTime;
+
+	/**
+	 * The color of every tile of the board, as kept by {@link BitBoard}, and the version of the
+	 * board they were copied from
+	 */
+	private final byte[] tiles = new byte[BitBoard.ROW_COUNT * BitBoard.COL_COUNT];
+	private long boardVersion = -1L;
+
+	/**
+	 * Copies the current state of the game into this snapshot
+	 * @param engine - the game
+	 */
+	public void capture(GameEngine engine) {
+		this.isFirstGame = engine.isFirstGame();
+		this.isGamePaused = engine.isGamePaused();
+		this.isGameOver = engine.isGameOver();
+		this.currentPiece = engine.getCurrentPiece();
+		this.currentCol = engine.getCurrentCol();
+		this.currentRow = engine.getCurrentRow();
+		this.currentRotation = engine.getPieceRotation();
+		this.ghostRow = (currentPiece != null) ? engine.getGhostRow() : currentRow;
+		this.nextPiece = engine.getNextPiece();
+		this.score = engine.getScore();
+
+		BitBoard board = engine.getBoard();
+		if (board.getVersion() != boardVersion) {
+			board.copyColors(tiles);
+			boardVersion = board.getVersion();
+		}
+	}
+
+	public boolean isFirstGame() {
+		return isFirstGame;
+	}
+
+	public boolean isGamePaused() {
+		return isGamePaused;
+	}
+
+	public boolean isGameOver() {
+		return isGameOver;
+	}
+
+	public boolean isGameRunning() {
+		return !(isFirstGame || isGameOver || isGamePaused);
+	}
+
+	public Piece getCurrentPiece() {
+		return currentPiece;
+	}
+
+	public int getCurrentCol() {
+		return currentCol;
+	}
+
+	public int getCurrentRow() {
+		return currentRow;
+	}
+
+	public int getPieceRotation() {
+		return currentRotation;
+	}
+
+	public int getGhostRow() {
+		return ghostRow;
+	}
+
+	public Piece getNextPiece() {
+		return nextPiece;
+	}
+
+	public long getScore() {
+		return score;
+	}
+
+	public float getFallProgress() {
+		return fallProgress;
+	}
+
+	/**
+	 * @param progress - how far the falling piece is from falling one more row, from 0 to 1
+	 */
+	public void setFallProgress(float progress) {
+		this.fallProgress = progress;
+	}
+
+	public long getInputTime() {
+		return inputTime;
+	}
+
+	public long getInputAppliedTime() {
+		return inputAppliedTime;
+	}
+
+	public long getInputTickedTime() {
+		return inputTickedTime;
+	}
+
+	/**
+	 * @param inputTime - when the last key event that changed the game happened
+	 * @param appliedTime - when it was applied
+	 * @param tickedTime - when the update that applied it was over
+	 */
+	public void setInputTimes(long inputTime, long appliedTime, long tickedTime) {
+		this.inputTime = inputTime;
+		this.inputAppliedTime = appliedTime;
+		this.inputTickedTime = tickedTime;
+	}
+
+	/**
+	 * @param col - column of the tile
+	 * @param row - row of the tile
+	 * @return the piece that landed on the tile, or null if the tile is empty
+	 */
+	public Piece getTile(int col, int row) {
+		int color = tiles[row * BitBoard.COL_COUNT + col];
+		return (color == 0) ? null : Piece.fromOrdinal(color - 1);
+	}
+
+	/**
+	 * @return the version of the board this snapshot was copied from
+	 */
+	public long getBoardVersion() {
+		return boardVersion;
+	}
+}
@@ -0,0 +1,88 @@
+package natetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks pieces at random, but tries again a few times whenever it picks one of the last pieces dealt,
+ * like the randomizer of The Grand Master does. Repeats become rare, without the pieces becoming as
+ * predictable as with a bag. The history starts full of S and Z pieces, and the first piece is never
+ * an S, a Z or an O, so that games never start with a piece that leaves a hole.
+ */
+public class HistoryPieceGenerator implements PieceGenerator {
+
+	/**
+	 * The number of pieces remembered, and the number of times a piece is picked before
+	 * one that was dealt recently is accepted
+	 */
+	private static final int HISTORY_SIZE = 4;
+	private static final int ROLL_COUNT = 6;
+
+	private SplittableRandom random = new SplittableRandom();
+
+	/**
+	 * The last pieces dealt, as a ring starting at {@code historyStart}
+	 */
+	private final Piece[] history = new Piece[HISTORY_SIZE];
+	private int historyStart;
+	private boolean isFirstPiece;
+
+	public HistoryPieceGenerator() {
+		clearHistory();
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		this.random = new SplittableRandom(seed);
+		clearHistory();
+	}
+
+	@Override
+	public Piece next() {
+		Piece piece;
+		if (isFirstPiece) {
+			do {
+				piece = pick();
+			} while (piece == Piece.TileS || piece == Piece.TileZ || piece == Piece.TileO);
+			isFirstPiece = false;
+		} else {
+			piece = pick();
+			for (int roll = 1; roll < ROLL_COUNT && isInHistory(piece); roll++) {
+				piece = pick();
+			}
+		}
+		history[historyStart] = piece;
+		historyStart = (historyStart + 1) % HISTORY_SIZE;
+		return piece;
+	}
+
+	/**
+	 * @return a piece picked at random, each kind being as likely as any other
+	 */
+	private Piece pick() {
+		return Piece.fromOrdinal(random.nextInt(GameEngine.PIECES_COUNT));
+	}
+
+	/**
+	 * @param piece - a piece
+	 * @return true if the piece is one of the last pieces dealt
+	 */
+	private boolean isInHistory(Piece piece) {
+		for (Piece dealt : history) {
+			if (dealt == piece) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fills the history with S and Z pieces, as if they had just been dealt
+	 */
+	private void clearHistory() {
+		for (int i = 0; i < HISTORY_SIZE; i++) {
+			history[i] = (i % 2 == 0) ? Piece.TileZ : Piece.TileS;
+		}
+		historyStart = 0;
+		isFirstPiece = true;
+	}
+}
@@ -4,23 +4,39 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.net.URL;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
 
-import javax.swing.Box;
-import javax.swing.BoxLayout;
-import javax.swing.Icon;
-import javax.swing.ImageIcon;
-import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import jdk.jfr.EventType;
+import natetris.jfr.RenderEvent;
+import utils.AnimatedSprite;
+import utils.AssetLoader;
 
 /**
  * The {@code InfoPanel} class is responsible for showing the current game information, such as
- * the next piece that is going to be displayed and the current score.
+ * the next piece that is going to be displayed and the current score.<br>
+ * The panel is driven by events: it's only drawn again when something it shows has changed. 
+ * Events may be sent from any thread, and are handled on the event dispatch thread.
  */
 public class InfoPanel extends JPanel {
 
   private static final long serialVersionUID = -3849098449596016270L;
   
+  /**
+   * The flight recorder event of a paint, only created while it's being recorded
+   */
+  private static final EventType RENDER_EVENT = EventType.getEventType(RenderEvent.class);
+  
   /**
    * Fonts properties
    */
@@ -28,6 +44,12 @@ public class InfoPanel extends JPanel {
   private static final Font SMALL_FONT = new Font("Tahoma", Font.PLAIN, 13);
   private static final Color FONT_COLOR = Color.GRAY;
   
+  /**
+   * The categories of the panel's images in the asset manifest: the face shown when the player scores, and the logo
+   */
+  private static final String CELEBRATION_CATEGORY = "celebration";
+  private static final String LOGO_CATEGORY = "logo";
+  
   /**
    * The biggest size that a piece may have
    */
@@ -40,65 +62,144 @@ public class InfoPanel extends JPanel {
   private static final int SPACE_BETWEEN_STRINGS = 25;
   private static final int PADDING_BOX = 5;
   private static final int BORDER_WIDTH = Board.BORDER_WIDTH;
+  private static final int PREDICTION_BOX_WIDTH = TILE_SIZE * MAX_PIECE_DIMENSION + PADDING_BOX;
+  
+  /**
+   * The vertical position of the score, and of the help text that comes underneath it
+   */
+  private static final int SCORE_OFFSET = SPACE_BETWEEN_STRINGS + PREDICTION_BOX_WIDTH;
+  private static final int HELP_OFFSET = SCORE_OFFSET + SPACE_BETWEEN_STRINGS;
+  
+  /**
+   * The help for the player, which never changes
+   */
+  private static final String[] HELP_TEXT = {
+		  "\tRotate pieces with 'Q' or 'E', or up arrow",
+		  "\tMove pieces using the pointers keys, OR:",
+		  "\t> move left by pressing 'A'",
+		  "\t> move right by pressing 'D'",
+		  "\t> move down by pressing 'S'",
+		  "\tDrop pieces at once by pressing space"
+  };
+  
+  /**
+   * How long Natan's face is shown after the player scores, in milliseconds
+   */
+  private static final int CELEBRATION_MILLIS = 5000;
+  
+  /**
+   * The vertical position of the game logo, right under the last line of help, leaving room for its descenders
+   */
+  private static final int LOGO_OFFSET = BORDER_WIDTH + HELP_OFFSET + HELP_TEXT.length * SPACE_BETWEEN_STRINGS + PADDING_BOX;
 
   /**
    * Represents if the player has just scored. 
-   * This is used to manipulate the visibility of a picture for a determined length of time.
+   * While it's true Natan's face is shown in place of the next piece
    */
-  private boolean hasJustScored = false;
+  private volatile boolean isCelebrating = false;
   
   /**
-   * Natan's face that will pop up when player scores
+   * Natan's face that will pop up when player scores, the time the celebration 
+   * started at, and the frame of the animation that is shown
    */
-  private JLabel natanImage = null;
+  private volatile AnimatedSprite natanSprite = null;
+  private volatile long celebrationStart;
+  private volatile int natanFrame;
   
   /**
-   * The game logo that will be shown during the game
+   * The game logo that will be shown during the game, the time its animation
+   * started at, and the frame of the animation that is shown
    */
-  private JLabel natetrisLogo = null;
+  private volatile AnimatedSprite logoSprite = null;
+  private volatile long logoStart;
+  private volatile int logoFrame;
   
   /**
-   * Gets the current time in milliseconds to manipulate natanImage's appearance
+   * Hides Natan's face once the celebration is over
    */
-  private long lastScoreTime = 0L;
+  private Timer celebrationTimer;
   
   /**
-   * The game instance
+   * The information shown on the panel, as of the last events handled
    */
-  private Natetris natetris;
+  private boolean isGameRunning = false;
+  private Piece nextPiece;
+  private String scoreText = "0";
   
-  public InfoPanel(Natetris natetris) {
-    this.natetris = natetris;
+  /**
+   * The help text, drawn once and then copied on every paint
+   */
+  private BufferedImage helpLayer;
+  
+  /**
+   * The pre-shaded tiles the next piece is drawn with
+   */
+  private TileAtlas atlas;
+  
+  /**
+   * @param atlas - the tiles the next piece is drawn with
+   * @param assets - loads the images of the panel, which show up once they're loaded
+   */
+  public InfoPanel(TileAtlas atlas, AssetLoader assets) {
+    this.atlas = atlas;
   
     setPreferredSize(new Dimension(Board.PANEL_WIDTH, Board.PANEL_HEIGHT));
     setBackground(Color.BLACK);
-	setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
     
     /*
-	 * Tries to load the images that will be shown during the game
-	 */
-    Icon animatedNatan = createImageIcon("img/deal_with.gif");
-	this.natanImage = new JLabel(animatedNatan);
-	Icon animatedLogo = createImageIcon("img/logo.gif");
-	this.natetrisLogo = new JLabel(animatedLogo);
-	
-	/*
-	 * The image will be displayed only when player hits a score, so it starts out as hidden
+	 * Tries to load the images that will be shown during the game, in the background. Their animations are 
+	 * played by the game loop, through animate(), and drawn along with the rest of the panel
 	 */
-	this.add(natanImage);
-	this.add(Box.createVerticalStrut(300)); // distance between images
-	this.add(natetrisLogo);
+	AssetLoader.Decoder<AnimatedSprite> spriteDecoder = new AssetLoader.Decoder<AnimatedSprite>() {
+		
+		@Override
+		public AnimatedSprite decode(InputStream input) throws IOException {
+			return AnimatedSprite.read(input);
+		}
+	};
+	String celebrationName = assets.getName(CELEBRATION_CATEGORY);
+	if (celebrationName != null) {
+		assets.load(celebrationName, spriteDecoder).thenAccept(new Consumer<AnimatedSprite>() {
+			
+			@Override
+			public void accept(AnimatedSprite sprite) {
+				natanSprite = sprite;
+			}
+		});
+	}
+	String logoName = assets.getName(LOGO_CATEGORY);
+	if (logoName != null) {
+		assets.load(logoName, spriteDecoder).thenAccept(new Consumer<AnimatedSprite>() {
+			
+			@Override
+			public void accept(AnimatedSprite sprite) {
+				logoStart = System.nanoTime();
+				logoSprite = sprite;
+				repaint();
+			}
+		});
+	}
 	
-	natanImage.setVisible(false);
-	natetrisLogo.setVisible(true);
+	this.celebrationTimer = new Timer(CELEBRATION_MILLIS, new ActionListener() {
+		
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			setCelebrating(false);
+		}
+	});
+	celebrationTimer.setRepeats(false);
   }
   
   @Override
   protected void paintComponent(Graphics g) {
+    RenderEvent event = RENDER_EVENT.isEnabled() ? new RenderEvent() : null;
+    if (event != null) {
+    	event.begin();
+    }
     super.paintComponent(g);
+    atlas.validate(getGraphicsConfiguration());
     g.setColor(Color.WHITE);
     g.setFont(LARGE_FONT);
-    int offset = SPACE_BETWEEN_STRINGS;
     
     /*
      * Enhances drawing methods readability, by considering the 
@@ -110,108 +211,194 @@ public class InfoPanel extends JPanel {
      * Draws both the rectangle which will hold the next piece to come and
      * the piece itself 
      */
-    g.drawRect(0, 0, predictionBoxWidth(), predictionBoxWidth());
+    g.drawRect(0, 0, PREDICTION_BOX_WIDTH, PREDICTION_BOX_WIDTH);
     
-    if (natetris.isGameRunning()) {
-    	if (hasJustScored) {
-    		drawsSuccessImage(g);
-    	} else {
-    		drawsNextPiece(g);
+    if (isGameRunning && !isCelebrating && nextPiece != null) {
+    	drawsNextPiece(nextPiece, g);
+    	if (atlas.contentsLost()) {
+    		repaint();
     	}
     }
     
-    offset += predictionBoxWidth(); // strings have to be underneath the prediction square to be visible
-    
     g.setColor(FONT_COLOR);
     String points = "Points: ";
-    g.drawString(points, 0, offset);
-    g.drawString(Long.toString(natetris.getScore()), g.getFontMetrics().stringWidth(points), offset);
-    offset += SPACE_BETWEEN_STRINGS;
+    g.drawString(points, 0, SCORE_OFFSET);
+    g.drawString(scoreText, g.getFontMetrics().stringWidth(points), SCORE_OFFSET);
     
-    g.setFont(SMALL_FONT);
+    if (helpLayer == null) {
+    	drawHelpLayer();
+    }
+    g.drawImage(helpLayer, 0, HELP_OFFSET, null);
     
-    g.drawString("\tRotate pieces with 'Q' or 'E', or up arrow", 0, offset += SPACE_BETWEEN_STRINGS);
-    g.drawString("\tMove pieces using the pointers keys, OR:", 0, offset += SPACE_BETWEEN_STRINGS);
-    g.drawString("\t> move left by pressing 'A'", 0, offset += SPACE_BETWEEN_STRINGS);
-    g.drawString("\t> move right by pressing 'D'", 0, offset += SPACE_BETWEEN_STRINGS);
-    g.drawString("\t> move down by pressing 'S'", 0, offset += SPACE_BETWEEN_STRINGS);
+    g.translate(-BORDER_WIDTH, -BORDER_WIDTH);
+    if (isCelebrating && natanSprite != null) {
+    	natanSprite.draw(g, natanFrame, 0, 0);
+    }
+    if (logoSprite != null) {
+    	logoSprite.draw(g, logoFrame, 0, LOGO_OFFSET);
+    }
+    
+    if (event != null && event.shouldCommit()) {
+    	Rectangle clip = g.getClipBounds();
+    	event.component = "InfoPanel";
+    	event.width = (clip != null) ? clip.width : getWidth();
+    	event.height = (clip != null) ? clip.height : getHeight();
+    	event.commit();
+    }
+  }
+  
+  /**
+   * Moves the animations of the panel forward, asking for them to be drawn again
+   * only when they reached another frame. Called by the game loop on every frame
+   */
+  public void animate() {
+	  long now = System.nanoTime();
+	  if (logoSprite != null) {
+		  int frame = logoSprite.getFrameAt((now - logoStart) / 1000000L);
+		  if (frame != logoFrame) {
+			  logoFrame = frame;
+			  repaint(0, LOGO_OFFSET, logoSprite.getWidth(), logoSprite.getHeight());
+		  }
+	  }
+	  if (isCelebrating && natanSprite != null) {
+		  int frame = natanSprite.getFrameAt((now - celebrationStart) / 1000000L);
+		  if (frame != natanFrame) {
+			  natanFrame = frame;
+			  repaint(0, 0, natanSprite.getWidth(), natanSprite.getHeight());
+		  }
+	  }
+  }
+  
+  /**
+   * Draws the help text into its layer
+   */
+  private void drawHelpLayer() {
+	  int width = Board.PANEL_WIDTH - BORDER_WIDTH;
+	  int height = (HELP_TEXT.length + 1) * SPACE_BETWEEN_STRINGS;
+	  if (getGraphicsConfiguration() != null) {
+		  helpLayer = getGraphicsConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+	  } else {
+		  helpLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	  }
+	  Graphics g = helpLayer.getGraphics();
+	  g.setColor(FONT_COLOR);
+	  g.setFont(SMALL_FONT);
+	  int offset = 0;
+	  for (String line : HELP_TEXT) {
+		  g.drawString(line, 0, offset += SPACE_BETWEEN_STRINGS);
+	  }
+	  g.dispose();
   }
   
   /**
    * Draws the next piece that will come in the game
+   * @param piece - the next piece
    * @param Graphics g
    */
-  private void drawsNextPiece(Graphics g) { 
-	  Piece piece = natetris.getNextPiece();
-	      
-	  int dim = piece.getDimension();
+  private void drawsNextPiece(Piece piece, Graphics g) { 
+	  int[] tileCols = piece.getTileCols(0);
+	  int[] tileRows = piece.getTileRows(0);
 	  
-	  for (int x = 0; x < dim; x++) {
-	    for (int y = 0; y < dim; y++) {
-	      if (piece.isTile(x, y, 0)) {
-	    	  int currX = PADDING_BOX + (x * TILE_SIZE);
-	    	  int currY = PADDING_BOX + (y * TILE_SIZE);
-	          drawTile(piece, currX, currY, g);
-	      }
-	    }
+	  for (int tile = 0; tile < Piece.TILE_COUNT; tile++) {
+		  int currX = PADDING_BOX + (tileCols[tile] * TILE_SIZE);
+		  int currY = PADDING_BOX + (tileRows[tile] * TILE_SIZE);
+		  drawTile(piece, currX, currY, g);
 	  }
   }
   
   /**
-   * Draws the image the will be shown when the player has just scored
-   * @param Graphics g
+   * Shows the next piece that will fall. May be called from any thread
+   * @param piece - the next piece
    */
-  private void drawsSuccessImage(Graphics g) {
-	  long gifDuration = 5000L;
-	  if (gifDuration > (System.currentTimeMillis() - this.lastScoreTime)) {
-		  natanImage.setVisible(true);
-	  } else {
-		  natanImage.setVisible(false);
-		  hasJustScored = false;
-	  }
+  public void nextPieceChanged(final Piece piece) {
+	  SwingUtilities.invokeLater(new Runnable() {
+		  
+		  @Override
+		  public void run() {
+			  nextPiece = piece;
+			  repaintPredictionBox();
+		  }
+	  });
   }
   
   /**
-   * @return the prediction box's width
+   * Shows the current score. May be called from any thread
+   * @param score - the current score
    */
-  private int predictionBoxWidth() {
-	  return Board.TILE_SIZE * MAX_PIECE_DIMENSION + PADDING_BOX;
+  public void scoreChanged(final long score) {
+	  SwingUtilities.invokeLater(new Runnable() {
+		  
+		  @Override
+		  public void run() {
+			  scoreText = Long.toString(score);
+			  repaint(BORDER_WIDTH, BORDER_WIDTH + SCORE_OFFSET - SPACE_BETWEEN_STRINGS, 
+					  Board.PANEL_WIDTH - BORDER_WIDTH, SPACE_BETWEEN_STRINGS + PADDING_BOX);
+		  }
+	  });
   }
   
   /**
-   * Draws the next piece that will fall
-   * @param piece
-   * @param x
-   * @param y
-   * @param g
+   * Shows the next piece only while the game is running. May be called from any thread
+   * @param isRunning - true if the game is running, false if it's paused or over
    */
-  private void drawTile(Piece piece, int x, int y, Graphics g) {
-	  g.setColor(piece.getColor());
-	  g.fillRect(x, y, TILE_SIZE, TILE_SIZE);
+  public void gameStateChanged(final boolean isRunning) {
+	  SwingUtilities.invokeLater(new Runnable() {
+		  
+		  @Override
+		  public void run() {
+			  isGameRunning = isRunning;
+			  repaintPredictionBox();
+		  }
+	  });
   }
   
   /**
-   * If the player has just scored in the game, sets up the flag 
-   * so that media can be displayed
+   * Shows Natan's face in place of the next piece for a while, to celebrate 
+   * the lines cleared by the player. May be called from any thread
    */
-  public void setPlayerJustScored(boolean value) {
-	  this.lastScoreTime = System.currentTimeMillis();
-	  this.hasJustScored = value;
+  public void startCelebration() {
+	  SwingUtilities.invokeLater(new Runnable() {
+		  
+		  @Override
+		  public void run() {
+			  setCelebrating(true);
+			  celebrationTimer.restart();
+		  }
+	  });
   }
   
   /**
-   * Reads an image from path
-   * @param path
-   * @return a new ImageIcon containing the image read from path
+   * Shows or hides Natan's face. Must be called by the event dispatch thread
+   * @param state - true to show it, false to hide it
    */
-  private ImageIcon createImageIcon(String path) {
-	 URL imgURL = InfoPanel.class.getClassLoader().getResource(path);
-	  if (imgURL != null) {
-		  return new ImageIcon(imgURL);
-	  } else {
-		  System.err.println("Could not load image in " + path);
+  private void setCelebrating(boolean state) {
+	  if (state != isCelebrating) {
+		  natanFrame = 0;
+		  celebrationStart = System.nanoTime();
+		  isCelebrating = state;
+		  repaintPredictionBox();
+		  if (natanSprite != null) {
+			  repaint(0, 0, natanSprite.getWidth(), natanSprite.getHeight());
+		  }
 	  }
-	 return null;
   }
   
+  /**
+   * Asks for the box holding the next piece to be drawn again
+   */
+  private void repaintPredictionBox() {
+	  repaint(BORDER_WIDTH, BORDER_WIDTH, PREDICTION_BOX_WIDTH + 1, PREDICTION_BOX_WIDTH + 1);
+  }
+  
+  /**
+   * Draws the next piece that will fall
+   * @param piece
+   * @param x
+   * @param y
+   * @param g
+   */
+  private void drawTile(Piece piece, int x, int y, Graphics g) {
+	  atlas.drawTile(g, piece, false, x, y);
+  }
+
 }
@@ -0,0 +1,391 @@
+package natetris;
+
+import java.awt.event.FocusEvent;
+import java.awt.event.FocusListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+
+import utils.CommandRingBuffer;
+import utils.NatetrisTimer;
+
+/**
+ * The {@code InputHandler} class turns the keys pressed by the player into game actions.<br>
+ * Key events arrive on the event dispatch thread, where they're only stamped and queued. The queue is
+ * drained by the game thread at the beginning of each update, which is the only thread that changes the game.
+ * Holding a key to move sideways is handled here as well, with a delayed auto shift (the piece moves once,
+ * waits {@code DAS_MILLIS}, then moves every {@code ARR_MILLIS}), so that it doesn't depend on the key
+ * repeat of the operating system.<br>
+ * Keys held when the window loses the focus are released, as their release would never arrive.
+ */
+public class InputHandler extends KeyAdapter implements FocusListener {
+
+	/**
+	 * The controls of the game
+	 */
+	private enum Control {
+		NEW_GAME,
+		SOFT_DROP,
+		MOVE_RIGHT,
+		MOVE_LEFT,
+		ROTATE_ANTICLOCKWISE,
+		ROTATE_CLOCKWISE,
+		HARD_DROP,
+		PAUSE
+	}
+
+	private static final Control[] CONTROLS = Control.values();
+
+	/**
+	 * The delay before a held sideways key starts repeating, and the time between repeats
+	 */
+	private static final float DAS_MILLIS = 170.0f;
+	private static final float ARR_MILLIS = 50.0f;
+
+	/**
+	 * The number of commands that may wait in the queue for the next update
+	 */
+	private static final int QUEUE_CAPACITY = 64;
+
+	/**
+	 * The commands queued by the event dispatch thread. Each command is the ordinal of
+	 * the control shifted left by one, plus one if the key was pressed or zero if it was released
+	 */
+	private final CommandRingBuffer commands = new CommandRingBuffer(QUEUE_CAPACITY);
+
+	/**
+	 * The controls whose keys are down, as seen by the event dispatch thread,
+	 * used to ignore the key repeat of the operating system
+	 */
+	private final boolean[] isKeyDown = new boolean[CONTROLS.length];
+
+	/**
+	 * The game driven by the player
+	 */
+	private final GameEngine engine;
+
+	/**
+	 * The timer channels of the delayed auto shift: the delay before repeating, and the repeat itself
+	 */
+	private final NatetrisTimer.Channel delayChannel;
+	private final NatetrisTimer.Channel repeatChannel;
+
+	/**
+	 * State of the held keys, as seen by the game thread.
+	 * shiftDirection is -1 while shifting left, 1 while shifting right and 0 otherwise
+	 */
+	private boolean isLeftDown;
+	private boolean isRightDown;
+	private boolean isSoftDropDown;
+	private int shiftDirection;
+	private boolean isRepeating;
+
+	/**
+	 * The longest time, in milliseconds, a key event is believed to have waited for the event dispatch thread.
+	 * Longer waits come from clocks that don't agree, and are ignored
+	 */
+	private static final long MAX_DISPATCH_DELAY_MILLIS = 1000L;
+
+	/**
+	 * The last key event that changed the game, as seen by the game thread: the time, in nanoseconds,
+	 * it happened at, and the time it was applied at
+	 */
+	private long lastInputTime;
+	private long lastAppliedTime;
+
+	/**
+	 * Records the actions that changed the game, or null if games aren't recorded
+	 */
+	private ReplayRecorder recorder;
+
+	/**
+	 * Applies each command drained from the queue
+	 */
+	private final CommandRingBuffer.Handler applier = new CommandRingBuffer.Handler() {
+
+		@Override
+		public void handle(int command, long timestamp) {
+			if (apply(CONTROLS[command >> 1], (command & 1) != 0)) {
+				lastInputTime = timestamp;
+				lastAppliedTime = System.nanoTime();
+			}
+		}
+	};
+
+	/**
+	 * @param engine - the game driven by the player
+	 * @param timer - the timer that drives the delayed auto shift
+	 */
+	public InputHandler(GameEngine engine, NatetrisTimer timer) {
+		this.engine = engine;
+		this.delayChannel = timer.createChannel(1000.0f / DAS_MILLIS);
+		this.repeatChannel = timer.createChannel(1000.0f / ARR_MILLIS);
+	}
+
+	/**
+	 * @param recorder - records the actions that change the game
+	 */
+	public void setRecorder(ReplayRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	@Override
+	public void keyPressed(KeyEvent e) {
+		Control control = getControl(e.getKeyCode());
+		// keys that are already down are being repeated by the operating system
+		if (control != null && !isKeyDown[control.ordinal()]) {
+			isKeyDown[control.ordinal()] = true;
+			submit(control, true, getEventTime(e));
+		}
+	}
+
+	@Override
+	public void keyReleased(KeyEvent e) {
+		Control control = getControl(e.getKeyCode());
+		if (control != null) {
+			isKeyDown[control.ordinal()] = false;
+			submit(control, false, getEventTime(e));
+		}
+	}
+
+	@Override
+	public void focusGained(FocusEvent e) {
+	}
+
+	/**
+	 * Releases every key that's down, since the keys released while the window doesn't have
+	 * the focus aren't told, and would otherwise stay down for good
+	 */
+	@Override
+	public void focusLost(FocusEvent e) {
+		long now = System.nanoTime();
+		for (Control control : CONTROLS) {
+			if (isKeyDown[control.ordinal()]) {
+				isKeyDown[control.ordinal()] = false;
+				submit(control, false, now);
+			}
+		}
+	}
+
+	/**
+	 * Asks for a new game to be started on the next update. Must be called by the event dispatch thread
+	 */
+	public void requestNewGame() {
+		submit(Control.NEW_GAME, true, System.nanoTime());
+	}
+
+	/**
+	 * Tells when a key event happened, on the {@link System#nanoTime()} clock, counting the time it
+	 * waited to be dispatched, which {@link KeyEvent#getWhen()} reveals
+	 * @param e - the key event
+	 * @return the time the event happened at, in nanoseconds
+	 */
+	private static long getEventTime(KeyEvent e) {
+		long now = System.nanoTime();
+		long dispatchDelay = System.currentTimeMillis() - e.getWhen();
+		if (dispatchDelay < 0L || dispatchDelay > MAX_DISPATCH_DELAY_MILLIS) {
+			dispatchDelay = 0L;
+		}
+		return now - dispatchDelay * 1000000L;
+	}
+
+	/**
+	 * Queues a command for the game thread. Must be called by the event dispatch thread only, 
+	 * which is the single producer of the queue
+	 * @param control - the control of the command
+	 * @param isPressed - true if the key was pressed, false if it was released
+	 * @param timestamp - the time the key event happened at, in nanoseconds
+	 */
+	private void submit(Control control, boolean isPressed, long timestamp) {
+		int command = (control.ordinal() << 1) | (isPressed ? 1 : 0);
+		if (!commands.offer(command, timestamp)) {
+			System.err.println("Input queue is full, dropped " + control);
+		}
+	}
+
+	/**
+	 * Applies the queued commands and the delayed auto shift to the game.
+	 * Must be called by the game thread, at the beginning of each update
+	 */
+	public void update() {
+		commands.drain(applier);
+
+		if (shiftDirection == 0) {
+			return;
+		}
+		if (!isRepeating) {
+			if (delayChannel.completedOneCycle()) {
+				isRepeating = true;
+				repeatChannel.reset();
+				shift();
+			}
+		} else if (repeatChannel.completedOneCycle()) {
+			shift();
+		}
+	}
+
+	/**
+	 * Applies one command to the game
+	 * @param control - the control of the command
+	 * @param isPressed - true if the key was pressed, false if it was released
+	 * @return true if the command changed the game right away
+	 */
+	private boolean apply(Control control, boolean isPressed) {
+		switch (control) {
+			case MOVE_LEFT:
+				isLeftDown = isPressed;
+				return updateShift(-1, isPressed, isRightDown);
+
+			case MOVE_RIGHT:
+				isRightDown = isPressed;
+				return updateShift(1, isPressed, isLeftDown);
+
+			case SOFT_DROP:
+				isSoftDropDown = isPressed;
+				return false;
+
+			case NEW_GAME:
+				return isPressed && step(GameEngine.Action.NEW_GAME);
+
+			case ROTATE_ANTICLOCKWISE:
+				return isPressed && step(GameEngine.Action.ROTATE_ANTICLOCKWISE);
+
+			case ROTATE_CLOCKWISE:
+				return isPressed && step(GameEngine.Action.ROTATE_CLOCKWISE);
+
+			case HARD_DROP:
+				return isPressed && step(GameEngine.Action.HARD_DROP);
+
+			case PAUSE:
+				return isPressed && step(GameEngine.Action.TOGGLE_PAUSE);
+		}
+		return false;
+	}
+
+	/**
+	 * Starts or stops shifting the piece sideways. When a sideways key is released while
+	 * the opposite one is still down, the piece starts shifting the other way
+	 * @param direction - the direction of the key, -1 for left and 1 for right
+	 * @param isPressed - true if the key was pressed, false if it was released
+	 * @param isOppositeDown - true if the key of the opposite direction is down
+	 * @return true if the piece moved
+	 */
+	private boolean updateShift(int direction, boolean isPressed, boolean isOppositeDown) {
+		if (isPressed) {
+			return startShift(direction);
+		} else if (shiftDirection == direction) {
+			if (isOppositeDown) {
+				return startShift(-direction);
+			}
+			shiftDirection = 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the piece once and waits for the auto shift delay
+	 * @param direction - -1 for left and 1 for right
+	 * @return true if the piece moved
+	 */
+	private boolean startShift(int direction) {
+		shiftDirection = direction;
+		isRepeating = false;
+		delayChannel.reset();
+		return shift();
+	}
+
+	/**
+	 * Moves the piece one column towards the shift direction
+	 * @return true if the piece moved
+	 */
+	private boolean shift() {
+		return step((shiftDirection < 0) ? GameEngine.Action.MOVE_LEFT : GameEngine.Action.MOVE_RIGHT);
+	}
+
+	/**
+	 * Applies an action to the game, and records it if it changed the game
+	 * @param action - the action
+	 * @return true if the action changed the game
+	 */
+	private boolean step(GameEngine.Action action) {
+		if (!engine.step(action)) {
+			return false;
+		}
+		if (recorder != null) {
+			recorder.actionApplied(action);
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the player is holding the accelerating key
+	 */
+	public boolean isSoftDropDown() {
+		return isSoftDropDown;
+	}
+
+	/**
+	 * @return the time, in nanoseconds, the last key event that changed the game happened at, or 0 if none did yet.
+	 * Must be called by the game thread
+	 */
+	public long getLastInputTime() {
+		return lastInputTime;
+	}
+
+	/**
+	 * @return the time, in nanoseconds, the last key event that changed the game was applied at, or 0 if none was yet.
+	 * Must be called by the game thread
+	 */
+	public long getLastAppliedTime() {
+		return lastAppliedTime;
+	}
+
+	/**
+	 * @param keyCode - the code of a key
+	 * @return the control bound to the key, or null if the key does nothing
+	 */
+	private static Control getControl(int keyCode) {
+		switch (keyCode) {
+			// start new game
+			case KeyEvent.VK_ENTER:
+				return Control.NEW_GAME;
+
+			// move down
+			case KeyEvent.VK_NUMPAD2:
+			case KeyEvent.VK_S:
+			case KeyEvent.VK_DOWN:
+				return Control.SOFT_DROP;
+
+			// move right
+			case KeyEvent.VK_NUMPAD6:
+			case KeyEvent.VK_D:
+			case KeyEvent.VK_RIGHT:
+				return Control.MOVE_RIGHT;
+
+			// move left
+			case KeyEvent.VK_NUMPAD4:
+			case KeyEvent.VK_A:
+			case KeyEvent.VK_LEFT:
+				return Control.MOVE_LEFT;
+
+			// rotate anticlockwise
+			case KeyEvent.VK_UP:
+			case KeyEvent.VK_Q:
+				return Control.ROTATE_ANTICLOCKWISE;
+
+			// rotate clockwise
+			case KeyEvent.VK_E:
+				return Control.ROTATE_CLOCKWISE;
+
+			// drop
+			case KeyEvent.VK_SPACE:
+				return Control.HARD_DROP;
+
+			// pause
+			case KeyEvent.VK_P:
+				return Control.PAUSE;
+
+			default:
+				return null;
+		}
+	}
+}
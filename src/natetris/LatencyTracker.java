@@ -0,0 +1,77 @@
+package natetris;
+
+import utils.Histogram;
+
+/**
+ * The {@code LatencyTracker} class measures how long the game takes to show the effect of a key press.
+ * Each key event that changes the game is stamped when it happens, when the game thread applies it,
+ * and when the update that applied it is over. The stamps travel along with the {@link GameSnapshot}s,
+ * and the latency is recorded as soon as a frame showing the change is drawn, split into:
+ * <ul>
+ * <li>queue delay: from the key event to the update that applied it</li>
+ * <li>tick delay: from applying it to the end of that update</li>
+ * <li>render delay: from the end of the update to the frame that shows it</li>
+ * </ul>
+ * Frames are measured as soon as they're drawn, which is as close to the screen as Java gets.
+ * The tracker is written by the thread that draws the board only.
+ */
+public class LatencyTracker {
+
+	/**
+	 * The delays, in nanoseconds
+	 */
+	private final Histogram queueDelays = new Histogram();
+	private final Histogram tickDelays = new Histogram();
+	private final Histogram renderDelays = new Histogram();
+	private final Histogram totalDelays = new Histogram();
+
+	/**
+	 * The time the update whose input was last measured was over, so that each input is measured once
+	 */
+	private long lastTickedTime;
+
+	/**
+	 * Measures the input shown by a frame that was just drawn, unless it was already measured
+	 * @param snapshot - the snapshot the frame was drawn from
+	 */
+	public void frameShown(GameSnapshot snapshot) {
+		long tickedTime = snapshot.getInputTickedTime();
+		if (tickedTime == 0L || tickedTime == lastTickedTime) {
+			return;
+		}
+		lastTickedTime = tickedTime;
+
+		long now = System.nanoTime();
+		long inputTime = snapshot.getInputTime();
+		queueDelays.record(snapshot.getInputAppliedTime() - inputTime);
+		tickDelays.record(tickedTime - snapshot.getInputAppliedTime());
+		renderDelays.record(now - tickedTime);
+		totalDelays.record(now - inputTime);
+	}
+
+	/**
+	 * Forgets every delay measured so far
+	 */
+	public void reset() {
+		queueDelays.reset();
+		tickDelays.reset();
+		renderDelays.reset();
+		totalDelays.reset();
+	}
+
+	public Histogram getQueueDelays() {
+		return queueDelays;
+	}
+
+	public Histogram getTickDelays() {
+		return tickDelays;
+	}
+
+	public Histogram getRenderDelays() {
+		return renderDelays;
+	}
+
+	public Histogram getTotalDelays() {
+		return totalDelays;
+	}
+}
@@ -1,13 +1,22 @@
 package natetris;
 
 import java.awt.BorderLayout;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.Random;
+import java.nio.file.Paths;
 
 import javax.swing.JFrame;
 
+import jdk.jfr.EventType;
+import natetris.jfr.TickEvent;
+import utils.AssetLoader;
+import utils.AssetPack;
+import utils.GameLoop;
 import utils.NatetrisTimer;
+import utils.Profiler;
+import utils.TripleBuffer;
 import utils.WelcomeScreen;
 import utils.sound.Jukebox;
 
@@ -21,58 +30,118 @@ public class Natetris extends JFrame {
 	private static final long serialVersionUID = 6321156896206333624L;
 	
 	/**
-	 * The number of milliseconds between each frame to be displayed
+	 * The number of times per second the game logic is updated, and the number of frames displayed per second
 	 */
-	private static final long FRAME_RATE = 1000L / 50L;
+	private static final int TICKS_PER_SECOND = 50;
+	private static final int FRAMES_PER_SECOND = 60;
 	
 	/**
-	 * The quantity of different kinds of pieces
+	 * The most game updates run in a row to catch up after the game stalled
 	 */
-	public static final int PIECES_COUNT = Piece.values().length;
+	private static final int MAX_CATCH_UP_TICKS = 5;
 	
 	/**
-	 * Game control variables.
-	 * isNewGame represents if the game hasn't started yet. Occurs only when the game is launched
+	 * The flight recorder event of an update, only created while it's being recorded
 	 */
-	private boolean isFirstGame;
-	private boolean isGamePaused;
-	private boolean isGameOver;
+	private static final EventType TICK_EVENT = EventType.getEventType(TickEvent.class);
 	
 	/**
-	 * The column that the current piece is located
+	 * Represents if the board is drawn actively by the game loop, at the refresh rate of the screen, 
+	 * instead of being repainted by Swing. Turned on with {@code -Dnatetris.activeRendering=true}
 	 */
-	private int currentCol;
+	private static final boolean IS_ACTIVE_RENDERING = Boolean.getBoolean("natetris.activeRendering");
 	
 	/**
-	 * The row that the current piece is located
+	 * How the pieces are picked, and how many of them are known in advance. Set with 
+	 * {@code -Dnatetris.pieceGenerator=uniform|bag|history} and {@code -Dnatetris.previewSize=N}
 	 */
-	private int currentRow;
+	private static final String PIECE_GENERATOR = System.getProperty("natetris.pieceGenerator", PieceGenerator.UNIFORM);
+	private static final int PREVIEW_SIZE = Integer.getInteger("natetris.previewSize", GameEngine.DEFAULT_PREVIEW_SIZE);
 	
 	/**
-	 * The falling piece current rotation
+	 * The folder every game is recorded to, as a replay. Set with {@code -Dnatetris.replayFolder=path}, 
+	 * or to nothing so that games aren't recorded
 	 */
-	private int currentRotation;
+	private static final String REPLAY_FOLDER = System.getProperty("natetris.replayFolder", "replays");
 	
 	/**
-	 * The timer of the game, which controls the timer between game cycles
+	 * The game rules, which are driven by this window
+	 */
+	private GameEngine engine;
+	
+	/**
+	 * The snapshots of the game, captured by the game thread on every frame and drawn by the windows
+	 */
+	private TripleBuffer<GameSnapshot> snapshots;
+	
+	/**
+	 * The timer of the game, which controls the timer between game cycles, and its channels: 
+	 * the gravity, which follows the game speed, the soft drop, used while the player holds 
+	 * the accelerating key, and the falling cooldown
 	 */
 	private NatetrisTimer timer;
+	private NatetrisTimer.Channel gravityChannel;
+	private NatetrisTimer.Channel softDropChannel;
+	private NatetrisTimer.Channel cooldownChannel;
+	
+	/**
+	 * The loop that updates and renders the game
+	 */
+	private GameLoop gameLoop;
+	
+	/**
+	 * Measures the work of the game loop, shown over the board by pressing F3
+	 */
+	private Profiler profiler;
+	
+	/**
+	 * Measures how long key presses take to show on the board
+	 */
+	private LatencyTracker latencyTracker;
+	
+	/**
+	 * The stamps of the last key event that changed the game, in nanoseconds, handed to the snapshots: 
+	 * when it happened, when it was applied, and when the update that applied it was over
+	 */
+	private long inputTime;
+	private long inputAppliedTime;
+	private long inputTickedTime;
+	
+	/**
+	 * The metrics of the game, exposed through JMX, and the collision checks made by the board as of the last update
+	 */
+	private NatetrisMetrics metrics;
+	private long lastCollisionChecks;
 	
 	/**
 	 * Represents the cool down that happen when a piece hits an obstacle at super-speed, 
-	 * so that the next piece doesn't come down immediately at a high speed
+	 * so that the next piece doesn't come down immediately at a high speed. It lasts 
+	 * one cycle of the cooldown channel
 	 */
-	private int fallingCooldown;
+	private static final float FALLING_COOLDOWN_MILLIS = 600.0f;
+	private boolean isCoolingDown;
 	
 	/**
-	 * The values that define the game update speed. The default speed 
-	 * is replaced with the faster speed whenever the player hits the accelerating 
-	 * key, and then gets back to normal whenever the player releases such key. 
+	 * The speed that replaces the game speed whenever the player holds the accelerating 
+	 * key, until the player releases such key. 
 	 */
-	private final float DEFAULT_SPEED = 1.0f;
-	private float defaultSpeed = DEFAULT_SPEED;
 	private float fastSpeed = 25.0f;
 	
+	/**
+	 * Represents if the pieces were falling at the fast speed on the last update
+	 */
+	private boolean isSoftDropping;
+	
+	/**
+	 * Turns the keys pressed by the player into game actions
+	 */
+	private InputHandler inputHandler;
+	
+	/**
+	 * Records the games, or null if they aren't recorded
+	 */
+	private ReplayRecorder recorder;
+	
 	/**
 	 * The game's sound system handler
 	 */
@@ -82,104 +151,113 @@ public class Natetris extends JFrame {
 	 * Common use variables
 	 */
 	private Board board;
-	private Piece currentPiece;
-	private Piece nextPiece;
-	private int score;
-	private Random random;
+	private BoardCanvas boardCanvas; // replaces the board when rendering actively
 	private InfoPanel infoPanel; // contains general info for the player
 	
 	/**
 	 * Creates a new instance of the game. 
 	 * This sets the properties of the JFrame that will hold the game section and
-	 * adds a key listener to it.
+	 * adds a key listener to it. Its images and sounds are loaded in the background, 
+	 * by the asset loader
+	 * @param assets - loads the assets of the game
 	 */
-	public Natetris() {
+	public Natetris(AssetLoader assets) {
 		super("NaTetris!");
 		setLayout(new BorderLayout());
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setResizable(false);
 		
-		addKeyListener(new KeyAdapter() {
+		this.engine = new GameEngine(new GameEngine.Listener() {
 			
 			@Override
-			public void keyPressed(KeyEvent e) {
-				switch (e.getKeyCode()) {
-					// start new game
-					case KeyEvent.VK_ENTER:
-						if (isGameOver) {
-							resetGame();
-						}
-						break;
-						
-					// move down
-					case KeyEvent.VK_NUMPAD2:
-					case KeyEvent.VK_S:
-					case KeyEvent.VK_DOWN:
-						if (!isGamePaused && fallingCooldown == 0) {
-							timer.setCyclesPerSecond(fastSpeed);
-						}
-						break;
-						
-					// move right
-					case KeyEvent.VK_NUMPAD6:
-					case KeyEvent.VK_D:
-					case KeyEvent.VK_RIGHT:
-						if (!isGamePaused && board.isPossibleToMovePiece(currentPiece, currentCol+1, currentRow, currentRotation)) {
-							currentCol++;
-						}
-						break;
-						
-					// move left
-					case KeyEvent.VK_NUMPAD4:
-					case KeyEvent.VK_A:
-					case KeyEvent.VK_LEFT:
-						if (!isGamePaused && board.isPossibleToMovePiece(currentPiece, currentCol-1, currentRow, currentRotation)) {
-							currentCol--;
-						}
-						break;
-					
-					// rotate anticlockwise
-					case KeyEvent.VK_UP:
-					case KeyEvent.VK_Q:
-						if (!isGamePaused) {
-							rotateCurrentPiece((currentRotation == 0) ? 3 : currentRotation-1);
-						}
-						break;
-						
-					// rotate clockwise
-					case KeyEvent.VK_E:
-						if (!isGamePaused) {
-							rotateCurrentPiece((currentRotation == 3) ? 0 : currentRotation+1);
-						}
-						break;
-						
-					// pause
-					case KeyEvent.VK_P:
-						if (isGamePaused) {
-							setGamePaused(false);
-						} else {
-							setGamePaused(true);
-						}
-						break;
+			public void pieceLocked(int[] clearedRows, int clearedLines) {
+				pieceLanded(clearedLines);
+				if (clearedLines > 0) {
+					metrics.recordLineClear(clearedLines);
+				}
+				metrics.setGameSpeed(engine.getGameSpeed());
+				infoPanel.nextPieceChanged(engine.getNextPiece());
+				if (clearedLines > 0) {
+					infoPanel.scoreChanged(engine.getScore());
+				}
+				if (engine.isGameOver()) {
+					infoPanel.gameStateChanged(false);
+					if (recorder != null) {
+						recorder.gameOver(engine.getScore());
+					}
 				}
 			}
 			
 			@Override
-			public void keyReleased(KeyEvent e) {
-				if (e.getKeyCode() == KeyEvent.VK_S ||
-					e.getKeyCode() == KeyEvent.VK_DOWN ||
-					e.getKeyCode() == KeyEvent.VK_NUMPAD2) {
-					timer.setCyclesPerSecond(defaultSpeed);
-					timer.reset();
+			public void gameStarted() {
+				resetTimers();
+				if (recorder != null) {
+					recorder.gameStarted(engine.getSeed());
 				}
+				metrics.setGameSpeed(engine.getGameSpeed());
+				infoPanel.scoreChanged(engine.getScore());
+				infoPanel.nextPieceChanged(engine.getNextPiece());
+				infoPanel.gameStateChanged(true);
 			}
-		});
+			
+			@Override
+			public void gamePaused(boolean state) {
+				setGamePaused(state);
+				infoPanel.gameStateChanged(!state);
+			}
+		}, PieceGenerator.forName(PIECE_GENERATOR), PREVIEW_SIZE);
+		this.timer = new NatetrisTimer();
+		this.gravityChannel = timer.createChannel(engine.getGameSpeed());
+		this.softDropChannel = timer.createChannel(fastSpeed);
+		this.cooldownChannel = timer.createChannel(1000.0f / FALLING_COOLDOWN_MILLIS);
+		timer.setPaused(true);
+		this.inputHandler = new InputHandler(engine, timer);
+		addKeyListener(inputHandler);
+		addFocusListener(inputHandler);
+		if (!REPLAY_FOLDER.isEmpty()) {
+			this.recorder = new ReplayRecorder(Paths.get(REPLAY_FOLDER), PIECE_GENERATOR, TICKS_PER_SECOND);
+			inputHandler.setRecorder(recorder);
+		}
+		this.snapshots = new TripleBuffer<>(new GameSnapshot(), new GameSnapshot(), new GameSnapshot());
+		TileAtlas atlas = new TileAtlas(Board.TILE_SIZE);
+		this.infoPanel = new InfoPanel(atlas, assets);
+		this.jukebox = new Jukebox(assets);
 		
-		this.board = new Board(this);
-		this.infoPanel = new InfoPanel(this);
-		this.jukebox = new Jukebox();
+		this.profiler = new Profiler();
+		this.latencyTracker = new LatencyTracker();
+		this.metrics = new NatetrisMetrics(profiler, latencyTracker, jukebox);
+		metrics.register();
 		
-		add(board, BorderLayout.WEST);
+		/*
+		 * Every asset was asked for by now, so the game is playable once they're loaded
+		 */
+		assets.whenAllLoaded().thenRun(new Runnable() {
+			
+			@Override
+			public void run() {
+				metrics.setStartupMillis(AssetLoader.getUptimeMillis());
+			}
+		});
+		if (IS_ACTIVE_RENDERING) {
+			this.boardCanvas = new BoardCanvas(new TileAtlas(Board.TILE_SIZE));
+			boardCanvas.setProfiler(profiler);
+			boardCanvas.setLatencyTracker(latencyTracker);
+			add(boardCanvas, BorderLayout.WEST);
+		} else {
+			this.board = new Board(snapshots, atlas);
+			board.setProfiler(profiler);
+			board.setLatencyTracker(latencyTracker);
+			add(board, BorderLayout.WEST);
+		}
+		addKeyListener(new KeyAdapter() {
+			
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_F3) {
+					toggleProfilerOverlay();
+				}
+			}
+		});
 		add(infoPanel, BorderLayout.EAST);
 		pack();
 		setLocationRelativeTo(null); // places the JFrame at the center of the screen
@@ -190,237 +268,177 @@ public class Natetris extends JFrame {
 	 * This will refresh the JPanels and handle the game's logic. 
 	 */
 	public void startGame() {
-		this.random = new Random();
-		this.isFirstGame = true;
-		this.timer = new NatetrisTimer(defaultSpeed);
-		timer.setPaused(true);
 		jukebox.playMusic();
-		while (true) {
-			/*
-			 * we will keep track on how much time was needed for the 
-			 * game and graphics update to complete, and discount that 
-			 * on the frame rate control
-			 */
-			long begin = System.nanoTime();
-			timer.update();
+		if (recorder != null) {
+			recorder.start();
+		}
+		int framesPerSecond = IS_ACTIVE_RENDERING ? getRefreshRate() : FRAMES_PER_SECOND;
+		this.gameLoop = new GameLoop(TICKS_PER_SECOND, framesPerSecond, MAX_CATCH_UP_TICKS, new GameLoop.Handler() {
 			
-			if (timer.completedOneCycle()) {
+			@Override
+			public void update() {
 				updateGame();
 			}
 			
-			renderGame();
-			
-			/*
-			 * Decrement cooldown if needed, so that the current piece 
-			 * gets able down quickly again
-			 */
-			if (fallingCooldown > 0) {
-				fallingCooldown--;
-			}
-			
-			long delta = (System.nanoTime() - begin) / 1000000L;
-			try {
-				Thread.sleep(FRAME_RATE - delta);
-			} catch (IllegalArgumentException iae) {
-				/* delta was way too big and caused the thread to receive a negative value as 
-				 * sleep() argument. This happens occasionally (although it shouldn't), 
-				 * so it was decided to set a default of FRAME_RATE time in case it happens
-				 */
-				try {
-					Thread.sleep(FRAME_RATE);	
-				} catch (InterruptedException ie) {
-					ie.printStackTrace();
-				}
-			} catch (InterruptedException ie) {
-				ie.printStackTrace();
+			@Override
+			public void render() {
+				renderGame();
 			}
-		}
+		});
+		gameLoop.setProfiler(profiler);
+		metrics.setGameLoop(gameLoop);
+		gameLoop.run();
 	}
 	
 	/**
-	 * Handles the game's logic
+	 * Handles the game's timing, making the current piece fall whenever the gravity channel, 
+	 * or the soft drop channel while the player holds the accelerating key, completes a cycle
 	 */
 	private void updateGame() {
-		if (board.isPossibleToMovePiece(currentPiece, currentCol, currentRow + 1, currentRotation)) {
-			currentRow++;
-		} else {
-			/*
-			 * Piece either hit the ground or another piece, so we add it to the board and get a new one :-) 
-			 */
-			board.addPieceToTheBoard(currentPiece, currentCol, currentRow, currentRotation);
-			
-			/*
-			 * Get the number of lines that were cleared out of the board, if any 
-			 */
-			int clearedLines = board.checkLines(currentPiece);
-			if (clearedLines > 0) {
-				/*
-				 * Get our score updated by shifting left the default value by the number of cleared lines
-				 */
-				score += 75 << clearedLines;
-				
-				/*
-				 * Plays a beautiful audio clip and displays a lovely picture 
-				 * to keep our player motivated :-)
-				 */
-				try {
-					infoPanel.setPlayerJustScored(true);
-					jukebox.pausesMusic();
-					jukebox.playVoice(clearedLines);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+		TickEvent event = TICK_EVENT.isEnabled() ? new TickEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		timer.update();
+		if (recorder != null) {
+			recorder.advance();
+		}
+		inputHandler.update();
+		
+		/*
+		 * Ends the cooldown once its cycle is complete, so that the current piece 
+		 * gets able down quickly again
+		 */
+		if (isCoolingDown && cooldownChannel.completedOneCycle()) {
+			isCoolingDown = false;
+		}
+		
+		/*
+		 * Whenever the pieces switch between speeds, the channel taking over starts a fresh cycle
+		 */
+		boolean softDrop = inputHandler.isSoftDropDown() && !isCoolingDown && engine.isGameRunning();
+		if (softDrop != isSoftDropping) {
+			isSoftDropping = softDrop;
+			if (softDrop) {
+				softDropChannel.reset();
+			} else {
+				gravityChannel.reset();
 			}
-			
-			/*
-			 * Sets the cool down to x, which means that it will run (x * FRAME_RATE) times
-			 */
-			fallingCooldown = 30;
-			
-			/*
-			 * Increase the default speed a bit so that the game doesn't get tedious, 
-			 * then set the timer to default speed again, so that if the player is still holding 's' the next
-			 * piece will only speed up again when fallingCooldown gets to 0
-			 */
-			increaseGameSpeed();
-			timer.reset();
-			timer.setCyclesPerSecond(defaultSpeed);
-			
-			if (!isGameOver) {
-				spawnNewPiece();
+		}
+		
+		boolean pieceFell = getFallChannel().completedOneCycle() && engine.isGameRunning();
+		if (pieceFell) {
+			engine.tick();
+			if (recorder != null) {
+				recorder.pieceFell();
 			}
 		}
-	}
-	
-	/**
-	 * Increases speed taking in consideration the current score. The higher the score, 
-	 * the higher the speed.
-	 */
-	private void increaseGameSpeed() {
-		if (score > 1000 && score < 2000) {
-			defaultSpeed += 0.002f;
-		} else if (score > 2000 && score < 4000) {
-			defaultSpeed += 0.005f;
-		} else {
-			defaultSpeed += 0.01f;
+		
+		long collisionChecks = engine.getBoard().getCollisionChecks();
+		metrics.recordTick(collisionChecks - lastCollisionChecks);
+		if (event != null && event.shouldCommit()) {
+			event.pieceFell = pieceFell;
+			event.isSoftDropping = isSoftDropping;
+			event.gameSpeed = engine.getGameSpeed();
+			event.collisionChecks = collisionChecks - lastCollisionChecks;
+			event.commit();
+		}
+		lastCollisionChecks = collisionChecks;
+		
+		/*
+		 * Stamps the end of the update that applied the last key event changing the game, 
+		 * so that the frames showing the change can tell how long it took
+		 */
+		if (inputHandler.getLastAppliedTime() != inputAppliedTime) {
+			inputTime = inputHandler.getLastInputTime();
+			inputAppliedTime = inputHandler.getLastAppliedTime();
+			inputTickedTime = System.nanoTime();
 		}
 	}
 	
 	/**
-	 * Render all game windows
-	 */
-	private void renderGame() {
-		board.repaint();
-		infoPanel.repaint();
-	}
-	
-	/**
-	 * Sets all default variables to their initial values
+	 * @return the channel the pieces are currently falling with
 	 */
-	public void resetGame() {
-		this.isFirstGame = false;
-		this.isGameOver = false;
-		this.isGamePaused = false;
-		this.score = 0;
-		this.nextPiece = Piece.values()[random.nextInt(PIECES_COUNT)];
-		this.board.clear();
-		this.timer.reset();
-		this.fallingCooldown = 0;
-		this.defaultSpeed = DEFAULT_SPEED;
-		spawnNewPiece();
+	private NatetrisTimer.Channel getFallChannel() {
+		return isSoftDropping ? softDropChannel : gravityChannel;
 	}
 	
 	/**
-	 * Creates a new piece and set it as the next piece to fall. 
-	 * The previous piece is then placed as the current one.
+	 * Handles a piece that either hit the ground or another piece
+	 * @param clearedLines - the number of lines cleared by the piece
 	 */
-	private void spawnNewPiece() {
-		this.currentPiece = nextPiece;
-		this.currentRotation = 0;
-		this.currentCol = currentPiece.getSpawnCol();
-		this.currentRow = currentPiece.getSpawnRow();
-		this.nextPiece = Piece.values()[random.nextInt(PIECES_COUNT)];
+	private void pieceLanded(int clearedLines) {
+		if (clearedLines > 0) {
+			/*
+			 * Plays a beautiful audio clip and displays a lovely picture 
+			 * to keep our player motivated :-)
+			 */
+			try {
+				infoPanel.startCelebration();
+				jukebox.playVoice(clearedLines);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
 		
 		/*
-		 * if current piece already spawned in an invalid location, the game is over
+		 * Starts the cool down, and sets the gravity to the game speed again, which increased a bit, 
+		 * so that if the player is still holding 's' the next piece will only speed up again when 
+		 * the cool down is over
 		 */
-		if (!board.isPossibleToMovePiece(currentPiece, currentCol, currentRow, currentRotation)) {
-			isGameOver = true;
-		}
+		isCoolingDown = true;
+		isSoftDropping = false;
+		cooldownChannel.reset();
+		gravityChannel.setCyclesPerSecond(engine.getGameSpeed());
+		gravityChannel.reset();
 	}
 	
 	/**
-	 * Rotates the piece to a new direction (clockwise or anticlockwise). If, with the new direction, 
-	 * the piece overlaps the board, it is moved accordingly to the center of the board so that it doesn't 
-	 * go out of bounds.
-	 * @param newDirection is the direction in which the piece will be rotated
+	 * Publishes a snapshot of the game, and then renders the board from it. 
+	 * The information panel is only drawn again when the game notifies it, or when one of its animations 
+	 * reaches another frame
 	 */
-	public void rotateCurrentPiece(int newDirection) {
-		/* 
-		 * newCol is used to rearrange the piece's location 
-		 * if it's rotated near enough the edge,
-		 * so that the piece doesn't clip out of the board
-		 */
-		int newCol = currentCol;
-		int newRow = currentRow;
-		
-		/*
-		 * get the insets of the piece to check if the piece clips out of the board 
-		 */
-		int left = currentPiece.getLeftmostTile(newDirection);
-		int right = currentPiece.getRightmostTile(newDirection);
-		
-		// avoids the piece from overflowing the board when rotated near left edge
-		while ((newCol + left) < 0) {
-			newCol++;
-		}
-		
-		// avoids the piece from overflowing the board when rotated near right edge
-		while ((newCol + right) >= Board.COL_COUNT) {
-			newCol--;
-		} 
-		
-		if (board.isPossibleToMovePiece(currentPiece,  newCol, newRow, newDirection)) {
-			this.currentRotation = newDirection;
-			this.currentCol = newCol;
-			this.currentRow = newRow;
+	private void renderGame() {
+		GameSnapshot snapshot = snapshots.getWriteBuffer();
+		snapshot.capture(engine);
+		snapshot.setFallProgress(timer.getProgress(getFallChannel()));
+		snapshot.setInputTimes(inputTime, inputAppliedTime, inputTickedTime);
+		snapshots.publish();
+		if (boardCanvas != null) {
+			boardCanvas.render(snapshot);
+		} else {
+			board.repaintChanges(snapshot);
 		}
+		infoPanel.animate();
+		metrics.recordFrame();
 	}
 	
-	public boolean isGamePaused() {
-		return isGamePaused;
-	}
-
-	public boolean isGameOver() {
-		return isGameOver;
-	}
-
-	public boolean isFirstGame() {
-		return isFirstGame;
-	}
-	
-	public Piece getCurrentPiece() {
-		return currentPiece;
-	}
-	
-	public Piece getNextPiece() {
-		return nextPiece;
-	}
-
-	public long getScore() {
-		return score;
+	/**
+	 * Shows or hides the profiler overlay over the board
+	 */
+	private void toggleProfilerOverlay() {
+		if (boardCanvas != null) {
+			boardCanvas.toggleProfilerOverlay();
+		} else {
+			board.toggleProfilerOverlay();
+		}
 	}
 	
-	public int getCurrentCol() {
-		return currentCol;
+	/**
+	 * Starts a new game on the next update. Must be called by the event dispatch thread
+	 */
+	public void resetGame() {
+		inputHandler.requestNewGame();
 	}
 	
-	public int getCurrentRow() {
-		return currentRow;
-	}
-
-	public int getPieceRotation() {
-		return currentRotation;
+	/**
+	 * Sets the timing variables to their initial values
+	 */
+	private void resetTimers() {
+		this.gravityChannel.setCyclesPerSecond(engine.getGameSpeed());
+		this.timer.reset();
+		this.isCoolingDown = false;
+		this.isSoftDropping = false;
 	}
 	
 	/**
@@ -430,30 +448,39 @@ public class Natetris extends JFrame {
 	private void setGamePaused(boolean state) {
 		// if the game is paused, stops the music
 		if (state == true) { 
-			jukebox.pausesMusic();
+			jukebox.stopMusic();
 		} else {
 			jukebox.playMusic();
 		}
 		timer.setPaused(state);
-		isGamePaused = state;
-		
 	}
-
-	public boolean isGameRunning() {
-		return !(isFirstGame || isGameOver || isGamePaused);
+	
+	/**
+	 * @return the refresh rate of the screen, or {@code FRAMES_PER_SECOND} if it's unknown
+	 */
+	private static int getRefreshRate() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return FRAMES_PER_SECOND;
+		}
+		int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+				.getDisplayMode().getRefreshRate();
+		return (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) ? FRAMES_PER_SECOND : refreshRate;
 	}
 	
 	public static void main(String[] args) {
 		/*
-		 * instantiates the game 
+		 * instantiates and displays the welcome screen, which shows the progress 
+		 * of the assets loaded in the background, from the asset pack if there's one
 		 */
-		Natetris natetris = new Natetris();
+		AssetLoader assets = new AssetLoader(AssetPack.openDefault());
+		WelcomeScreen welcomeScreen = new WelcomeScreen(assets);
+		welcomeScreen.setVisible(true);
 		
 		/*
-		 * instantiates and displays the welcome screen
+		 * instantiates the game, which asks for its assets; it can be played once they're all loaded 
 		 */
-		WelcomeScreen welcomeScreen = new WelcomeScreen(natetris);
-		welcomeScreen.setVisible(true);
+		Natetris natetris = new Natetris(assets);
+		welcomeScreen.setGame(natetris, assets);
 		
 		/*
 		 * starts the game; the board will be only be shown after the welcome screen is gone
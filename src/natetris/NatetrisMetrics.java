@@ -0,0 +1,303 @@
+package natetris;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import utils.GameLoop;
+import utils.Histogram;
+import utils.Profiler;
+import utils.sound.Jukebox;
+
+/**
+ * The {@code NatetrisMetrics} class counts what happens while the game runs, and exposes it through JMX
+ * under {@value #OBJECT_NAME}, so that a running game can be watched with JConsole or VisualVM.
+ * Counters are recorded by the game thread and read by JMX threads, so they're kept in
+ * {@code LongAdder}s, which are cheap to update and never block either side.
+ */
+public class NatetrisMetrics implements NatetrisMetricsMBean {
+
+	/**
+	 * The name the metrics are registered under
+	 */
+	public static final String OBJECT_NAME = "natetris:type=NatetrisMetrics";
+
+	/**
+	 * How often, in nanoseconds, the rates are measured again
+	 */
+	private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+	/**
+	 * Counters, since they were last reset
+	 */
+	private final LongAdder ticks = new LongAdder();
+	private final LongAdder frames = new LongAdder();
+	private final LongAdder collisionChecks = new LongAdder();
+	private final LongAdder[] lineClears = new LongAdder[Piece.MAX_PIECE_DIMENSION];
+
+	/**
+	 * The rates measured over the last window, and the start of the current window, along with
+	 * the counters as of then. The window is only touched by the game thread
+	 */
+	private volatile double ticksPerSecond;
+	private volatile double framesPerSecond;
+	private long windowStart = System.nanoTime();
+	private long windowTicks;
+	private long windowFrames;
+
+	/**
+	 * The frames dropped by the game loop as of the last reset
+	 */
+	private volatile long droppedFramesAtReset;
+
+	/**
+	 * Whether a JMX client asked for the counters to be reset, which the game thread does on its next frame,
+	 * along with the window of the rates
+	 */
+	private volatile boolean isResetRequested;
+
+	private volatile float gameSpeed = GameEngine.DEFAULT_SPEED;
+
+	/**
+	 * The time, in milliseconds, the game took to be playable since the JVM started, or -1 until it is
+	 */
+	private volatile long startupMillis = -1L;
+
+	/**
+	 * Sources of the metrics that keep their own counters
+	 */
+	private volatile GameLoop gameLoop;
+	private final Profiler profiler;
+	private final LatencyTracker latencyTracker;
+	private final Jukebox jukebox;
+
+	/**
+	 * @param profiler - the profiler of the game loop
+	 * @param latencyTracker - the input latency measures of the board
+	 * @param jukebox - the game's sound system
+	 */
+	public NatetrisMetrics(Profiler profiler, LatencyTracker latencyTracker, Jukebox jukebox) {
+		this.profiler = profiler;
+		this.latencyTracker = latencyTracker;
+		this.jukebox = jukebox;
+		for (int size = 0; size < lineClears.length; size++) {
+			lineClears[size] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Registers the metrics to the platform MBean server, so that JMX clients can find them
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param gameLoop - the loop running the game, which counts its dropped frames
+	 */
+	public void setGameLoop(GameLoop gameLoop) {
+		this.gameLoop = gameLoop;
+		this.droppedFramesAtReset = gameLoop.getDroppedFrames();
+	}
+
+	/**
+	 * Counts a game update. Must be called by the game thread
+	 * @param checks - the collision checks made by the board during the update
+	 */
+	public void recordTick(long checks) {
+		ticks.increment();
+		collisionChecks.add(checks);
+	}
+
+	/**
+	 * Counts a rendered frame, and measures the rates again once a window is over. Must be called by the game thread
+	 */
+	public void recordFrame() {
+		if (isResetRequested) {
+			resetWindow();
+		}
+		frames.increment();
+
+		long now = System.nanoTime();
+		long elapsed = now - windowStart;
+		if (elapsed >= RATE_WINDOW_NANOS) {
+			long currentTicks = ticks.sum();
+			long currentFrames = frames.sum();
+			ticksPerSecond = Math.max(0L, currentTicks - windowTicks) * 1e9 / elapsed;
+			framesPerSecond = Math.max(0L, currentFrames - windowFrames) * 1e9 / elapsed;
+			windowStart = now;
+			windowTicks = currentTicks;
+			windowFrames = currentFrames;
+		}
+	}
+
+	/**
+	 * Counts the lines cleared by a piece
+	 * @param clearedLines - the number of lines, from 1 to 4
+	 */
+	public void recordLineClear(int clearedLines) {
+		lineClears[clearedLines - 1].increment();
+	}
+
+	/**
+	 * @param speed - the current speed of the game, in rows per second
+	 */
+	public void setGameSpeed(float speed) {
+		this.gameSpeed = speed;
+	}
+
+	/**
+	 * @param millis - the time, in milliseconds, the game took to be playable since the JVM started
+	 */
+	public void setStartupMillis(long millis) {
+		this.startupMillis = millis;
+	}
+
+	@Override
+	public double getTicksPerSecond() {
+		return ticksPerSecond;
+	}
+
+	@Override
+	public double getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	@Override
+	public long getDroppedFrames() {
+		GameLoop loop = gameLoop;
+		return (loop != null) ? loop.getDroppedFrames() - droppedFramesAtReset : 0L;
+	}
+
+	@Override
+	public long getSingleLineClears() {
+		return lineClears[0].sum();
+	}
+
+	@Override
+	public long getDoubleLineClears() {
+		return lineClears[1].sum();
+	}
+
+	@Override
+	public long getTripleLineClears() {
+		return lineClears[2].sum();
+	}
+
+	@Override
+	public long getTetrisLineClears() {
+		return lineClears[3].sum();
+	}
+
+	@Override
+	public double getCollisionChecksPerTick() {
+		long count = ticks.sum();
+		return (count == 0L) ? 0.0 : (double) collisionChecks.sum() / count;
+	}
+
+	@Override
+	public float getGameSpeed() {
+		return gameSpeed;
+	}
+
+	@Override
+	public long getStartupMillis() {
+		return startupMillis;
+	}
+
+	@Override
+	public int getActiveVoices() {
+		return jukebox.getActiveVoiceCount();
+	}
+
+	@Override
+	public double getInputLatencyP50() {
+		return latencyTracker.getTotalDelays().getPercentile(50.0) / 1e6;
+	}
+
+	@Override
+	public double getInputLatencyP99() {
+		return latencyTracker.getTotalDelays().getPercentile(99.0) / 1e6;
+	}
+
+	@Override
+	public void resetCounters() {
+		isResetRequested = true;
+		profiler.reset();
+		latencyTracker.reset();
+	}
+
+	/**
+	 * Resets the counters, and starts a new window of the rates from them. Must be called by the game thread
+	 */
+	private void resetWindow() {
+		isResetRequested = false;
+		ticks.reset();
+		frames.reset();
+		collisionChecks.reset();
+		for (LongAdder counter : lineClears) {
+			counter.reset();
+		}
+		GameLoop loop = gameLoop;
+		if (loop != null) {
+			droppedFramesAtReset = loop.getDroppedFrames();
+		}
+		windowStart = System.nanoTime();
+		windowTicks = 0L;
+		windowFrames = 0L;
+	}
+
+	@Override
+	public String dumpHistogram(String name) {
+		Histogram histogram = getHistogram(name);
+		if (histogram == null) {
+			return "Unknown histogram " + name + ", expected update, render, sleep, alloc, "
+					+ "input, input.queue, input.tick or input.render";
+		}
+		StringBuilder dump = new StringBuilder();
+		dump.append(String.format("%s: count=%d p50=%d p90=%d p99=%d p99.9=%d max=%d%n", name,
+				histogram.getTotalCount(), histogram.getPercentile(50.0), histogram.getPercentile(90.0),
+				histogram.getPercentile(99.0), histogram.getPercentile(99.9), histogram.getMaxValue()));
+		for (int index = 0; index < histogram.getBucketCount(); index++) {
+			long count = histogram.getCount(index);
+			if (count > 0L) {
+				dump.append(String.format("%d..%d: %d%n", Histogram.getLowestValue(index),
+						Histogram.getHighestValue(index), count));
+			}
+		}
+		return dump.toString();
+	}
+
+	/**
+	 * @param name - the name of a histogram of the profiler or of the latency tracker
+	 * @return the histogram, or null if there's none with that name
+	 */
+	private Histogram getHistogram(String name) {
+		switch (String.valueOf(name)) {
+			case "update":
+				return profiler.getUpdateTimes();
+			case "render":
+				return profiler.getRenderTimes();
+			case "sleep":
+				return profiler.getSleepOvershoots();
+			case "alloc":
+				return profiler.getAllocations();
+			case "input":
+				return latencyTracker.getTotalDelays();
+			case "input.queue":
+				return latencyTracker.getQueueDelays();
+			case "input.tick":
+				return latencyTracker.getTickDelays();
+			case "input.render":
+				return latencyTracker.getRenderDelays();
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package natetris;
+
+/**
+ * The management interface of {@link NatetrisMetrics}, as seen by JMX clients such as JConsole or VisualVM
+ */
+public interface NatetrisMetricsMBean {
+
+	/**
+	 * @return the game updates run per second, over the last second
+	 */
+	double getTicksPerSecond();
+
+	/**
+	 * @return the frames rendered per second, over the last second
+	 */
+	double getFramesPerSecond();
+
+	/**
+	 * @return the frames skipped by the game loop for running late, since the counters were reset
+	 */
+	long getDroppedFrames();
+
+	/**
+	 * @return the pieces that cleared one line, since the counters were reset
+	 */
+	long getSingleLineClears();
+
+	/**
+	 * @return the pieces that cleared two lines, since the counters were reset
+	 */
+	long getDoubleLineClears();
+
+	/**
+	 * @return the pieces that cleared three lines, since the counters were reset
+	 */
+	long getTripleLineClears();
+
+	/**
+	 * @return the pieces that cleared four lines, since the counters were reset
+	 */
+	long getTetrisLineClears();
+
+	/**
+	 * @return the average number of collision checks made by the board per game update
+	 */
+	double getCollisionChecksPerTick();
+
+	/**
+	 * @return the current speed of the game, in rows per second
+	 */
+	float getGameSpeed();
+
+	/**
+	 * @return the number of voices the jukebox is playing
+	 */
+	int getActiveVoices();
+
+	/**
+	 * @return the median time, in milliseconds, from a key press to the first frame showing it
+	 */
+	double getInputLatencyP50();
+
+	/**
+	 * @return the 99th percentile of the time, in milliseconds, from a key press to the first frame showing it
+	 */
+	double getInputLatencyP99();
+
+	/**
+	 * @return the time, in milliseconds, from the start of the JVM to every asset being loaded, 
+	 * which is when the game can be played, or -1 while they're still loading
+	 */
+	long getStartupMillis();
+
+	/**
+	 * Sets every counter back to zero
+	 */
+	void resetCounters();
+
+	/**
+	 * @param name - the name of a histogram of the profiler: update, render, sleep or alloc,
+	 * or of the input latency: input, or its parts input.queue, input.tick and input.render
+	 * @return the percentiles and the non-empty buckets of the histogram, one per line
+	 */
+	String dumpHistogram(String name);
+}
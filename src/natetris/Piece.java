@@ -1,6 +1,7 @@
 package natetris;
 
 import java.awt.Color;
+import java.util.Arrays;
 
 /**
  * The {@code Piece} enum describes and details the properties shared among the pieces.
@@ -193,39 +194,144 @@ public enum Piece {
 	/**
 	 * How the tiles are set on the piece
 	 */
-	private boolean[][] tiles;
+	private final boolean[][] tiles;
 	
 	/**
 	 * The piece color
 	 */
-	private Color color;
+	private final Color color;
 	
 	/**
 	 * The dimension of the piece
 	 */
-	private int dimension;
+	private final int dimension;
 	
 	/**
 	 * The column that the piece will be originally spawned
 	 */
-	private int spawnCol;
+	private final int spawnCol;
 	
 	/**
 	 * The row that the piece will be originally spawned
 	 */
-	private int spawnRow;
+	private final int spawnRow;
 	
 	/**
 	 * The biggest size that a piece may have, which is piece 'I' (4 squares)
 	 */
 	public static final int MAX_PIECE_DIMENSION = 4;
 	
+	/**
+	 * The number of rotations each piece has
+	 */
+	public static final int ROTATION_COUNT = 4;
+	
+	/**
+	 * The number of tiles that make up every piece
+	 */
+	public static final int TILE_COUNT = 4;
+	
+	/**
+	 * The alpha value of the ghost piece, which shows where the falling piece will land
+	 */
+	public static final float GHOST_ALPHA = 0.3f;
+	
+	/**
+	 * The semi-transparent versions of the piece color, indexed by their 8-bit alpha value. 
+	 * They're built once, when first asked for, so that drawing a ghost piece allocates nothing
+	 */
+	private final Color[] ghostColors = new Color[256];
+	
+	/*
+	 * The geometry of every rotation, compiled from the tiles when the piece is created, so that
+	 * the game never has to scan the tiles again. None of these tables may be changed.
+	 */
+	
+	/**
+	 * The columns of the leftmost and rightmost tiles and the rows of the topmost and 
+	 * lowermost tiles, indexed by rotation
+	 */
+	private final int[] leftmostTiles = new int[ROTATION_COUNT];
+	private final int[] rightmostTiles = new int[ROTATION_COUNT];
+	private final int[] topmostTiles = new int[ROTATION_COUNT];
+	private final int[] lowermostTiles = new int[ROTATION_COUNT];
+	
+	/**
+	 * The column and the row of each tile, indexed by rotation and then by tile, 
+	 * ordered from top to bottom and from left to right
+	 */
+	private final int[][] tileCols = new int[ROTATION_COUNT][TILE_COUNT];
+	private final int[][] tileRows = new int[ROTATION_COUNT][TILE_COUNT];
+	
+	/**
+	 * For each rotation and each piece column, the row of the lowermost and of the topmost 
+	 * tile in that column, or -1 if the column has no tiles
+	 */
+	private final int[][] bottomSkirts;
+	private final int[][] topSkirts;
+	
+	/**
+	 * The tiles of each rotation compiled into one bit mask per piece row, where bit {@code x} 
+	 * is set when the piece has a tile at column {@code x} of that row
+	 */
+	private final int[][] rowMasks;
+	
+	/**
+	 * Cached copy of {@code values()}, so that lookups by ordinal don't clone the array
+	 */
+	private static final Piece[] VALUES = values();
+	
 	private Piece (int dimension, Color color, boolean [][] tiles) {
 		this.color = color;
 		this.tiles = tiles;
 		this.dimension = dimension;
 		this.spawnCol = 5;
 		this.spawnRow = 0;
+		this.bottomSkirts = new int[ROTATION_COUNT][dimension];
+		this.topSkirts = new int[ROTATION_COUNT][dimension];
+		this.rowMasks = new int[ROTATION_COUNT][dimension];
+		for (int rotation = 0; rotation < ROTATION_COUNT; rotation++) {
+			compileGeometry(rotation);
+		}
+		getGhostColor(GHOST_ALPHA);
+	}
+	
+	/**
+	 * Scans the tiles of one rotation and fills that rotation's entry of every geometry table
+	 * @param rotation - the rotation to be compiled
+	 */
+	private void compileGeometry(int rotation) {
+		leftmostTiles[rotation] = dimension;
+		rightmostTiles[rotation] = -1;
+		topmostTiles[rotation] = dimension;
+		lowermostTiles[rotation] = -1;
+		Arrays.fill(bottomSkirts[rotation], -1);
+		Arrays.fill(topSkirts[rotation], -1);
+		
+		int tile = 0;
+		for (int y = 0; y < dimension; y++) {
+			for (int x = 0; x < dimension; x++) {
+				if (!isTile(x, y, rotation)) {
+					continue;
+				}
+				tileCols[rotation][tile] = x;
+				tileRows[rotation][tile] = y;
+				tile++;
+				
+				rowMasks[rotation][y] |= 1 << x;
+				leftmostTiles[rotation] = Math.min(leftmostTiles[rotation], x);
+				rightmostTiles[rotation] = Math.max(rightmostTiles[rotation], x);
+				topmostTiles[rotation] = Math.min(topmostTiles[rotation], y);
+				lowermostTiles[rotation] = y;
+				bottomSkirts[rotation][x] = y;
+				if (topSkirts[rotation][x] < 0) {
+					topSkirts[rotation][x] = y;
+				}
+			}
+		}
+		if (tile != TILE_COUNT) {
+			throw new IllegalStateException(name() + " has " + tile + " tiles at rotation " + rotation);
+		}
 	}
 	
 	public boolean isTile(int x, int y, int rotation) {
@@ -233,80 +339,103 @@ public enum Piece {
 	}
 	
 	/**
-	 * Scans upside down the piece searching for a tile
-	 * returns when a tile is found.
 	 * @param rotation - current rotation of the piece
-	 * @return the first found tile's column location, starting from up-right ending in up-left
+	 * @return the column of the leftmost tile of the piece
 	 */
 	public int getLeftmostTile(int rotation) {
-		for (int x = 0; x < dimension; x++) {
-			for (int y = dimension - 1; y >= 0; y--) {
-				if (isTile(x, y, rotation)) {
-					return x; // returns the current column
-				}
-			}
-		}
-		return -1;
+		return leftmostTiles[rotation];
 	}
 	
- 	/**
-	 * Scans from bottom to up the piece searching for a tile 
-	 * returns when a tile is found.
+	/**
 	 * @param rotation - current rotation of the piece
-	 * @return the first found tile's column location, starting from bottom-right to up-left
+	 * @return the column of the rightmost tile of the piece
 	 */
 	public int getRightmostTile(int rotation) {
-		for (int x = dimension - 1; x >= 0; x--) {
-			for (int y = dimension - 1; y >= 0; y--) {
-				if (isTile(x, y, rotation)) {
-					return x; // returns the current column
-				}
-			}
-		}
-		return -1;
+		return rightmostTiles[rotation];
+	}
+	
+	/**
+	 * @param rotation - current rotation of the piece
+	 * @return the row of the topmost tile of the piece
+	 */
+	public int getTopmostTile(int rotation) {
+		return topmostTiles[rotation];
 	}
 	
 	/**
-	 * Scans the piece from right to left searching for a tile, and 
-	 * returns when a tile is found.
 	 * @param rotation - current rotation of the piece
-	 * @return the first found tile's location, starting from bottom-right to up-left
+	 * @return the row of the lowermost tile of the piece
 	 */
 	public int getLowermostTile(int rotation) {
-		for (int y = dimension - 1; y >= 0; y--) {
-			for (int x = dimension - 1; x >= 0; x--) {
-				if (isTile(x, y, rotation)) {
-					return y; // returns the current row
-				}
-			}
-		}
-		return -1;
+		return lowermostTiles[rotation];
+	}
+	
+	/**
+	 * @param rotation - current rotation of the piece
+	 * @return the column of each of the {@code TILE_COUNT} tiles of the piece
+	 */
+	public int[] getTileCols(int rotation) {
+		return tileCols[rotation];
+	}
+	
+	/**
+	 * @param rotation - current rotation of the piece
+	 * @return the row of each of the {@code TILE_COUNT} tiles of the piece, matching {@link #getTileCols(int)}
+	 */
+	public int[] getTileRows(int rotation) {
+		return tileRows[rotation];
+	}
+	
+	/**
+	 * @param rotation - current rotation of the piece
+	 * @return for each piece column, the row of its lowermost tile, or -1 if the column has no tiles
+	 */
+	public int[] getBottomSkirt(int rotation) {
+		return bottomSkirts[rotation];
+	}
+	
+	/**
+	 * @param rotation - current rotation of the piece
+	 * @return for each piece column, the row of its topmost tile, or -1 if the column has no tiles
+	 */
+	public int[] getTopSkirt(int rotation) {
+		return topSkirts[rotation];
+	}
+	
+	/**
+	 * @param rotation - current rotation of the piece
+	 * @return one bit mask per piece row, where bit {@code x} is set if there is a tile at column {@code x}
+	 */
+	public int[] getRowMasks(int rotation) {
+		return rowMasks[rotation];
 	}
 	
 	public boolean[][] getTiles() {
 		return tiles;
 	}
 
-	public void setTiles(boolean[][] tiles) {
-		this.tiles = tiles;
-	}
-
 	public Color getColor() {
 		return color;
 	}
 	
 	/**
-	 * @param alpha - the piece's alpha value 
+	 * @param alpha - the piece's alpha value, from 0 to 1
 	 * @return a {@code Color} object containing the semi-transparent
 	 * version of this piece's original color
+	 * @throws IllegalArgumentException if alpha is outside of 0 to 1, as {@code Color} does
 	 */
 	public Color getGhostColor(float alpha) {
-		float[] RGB = this.color.getRGBColorComponents(null);
-		return new Color(RGB[0], RGB[1], RGB[2], alpha);
-	}
-
-	public void setColor(Color color) {
-		this.color = color;
+		if (alpha < 0.0f || alpha > 1.0f) {
+			throw new IllegalArgumentException("Color parameter outside of expected range: Alpha");
+		}
+		// Color keeps alpha with 8 bits anyway, so that's the precision of the cache
+		int alphaLevel = (int) (alpha * 255 + 0.5f);
+		Color ghostColor = ghostColors[alphaLevel];
+		if (ghostColor == null) {
+			ghostColor = new Color(color.getRed(), color.getGreen(), color.getBlue(), alphaLevel);
+			ghostColors[alphaLevel] = ghostColor;
+		}
+		return ghostColor;
 	}
 
 	public int getDimension() {
@@ -320,4 +449,12 @@ public enum Piece {
 	public int getSpawnRow() {
 		return spawnRow;
 	}
+	
+	/**
+	 * @param ordinal - the ordinal of the piece
+	 * @return the piece whose ordinal is {@code ordinal}
+	 */
+	public static Piece fromOrdinal(int ordinal) {
+		return VALUES[ordinal];
+	}
 }
@@ -0,0 +1,46 @@
+package natetris;
+
+/**
+ * A {@code PieceGenerator} picks the pieces that fall, one after the other. Generators are seeded, so that
+ * the same seed always gives the same pieces, and each one has its own source of randomness, so that
+ * games played in parallel never share one.
+ */
+public interface PieceGenerator {
+
+	/**
+	 * The names of the generators, as given to {@link #forName(String)}
+	 */
+	String UNIFORM = "uniform";
+	String BAG = "bag";
+	String HISTORY = "history";
+
+	/**
+	 * Starts the sequence of pieces over, as given by a seed
+	 * @param seed - the seed of the sequence
+	 */
+	void setSeed(long seed);
+
+	/**
+	 * @return the next piece of the sequence
+	 */
+	Piece next();
+
+	/**
+	 * @param name - the name of a generator: {@value #UNIFORM}, {@value #BAG} or {@value #HISTORY}
+	 * @return a new generator of that kind
+	 * @throws IllegalArgumentException if there's no generator with that name
+	 */
+	static PieceGenerator forName(String name) {
+		switch (name) {
+			case UNIFORM:
+				return new UniformPieceGenerator();
+			case BAG:
+				return new BagPieceGenerator();
+			case HISTORY:
+				return new HistoryPieceGenerator();
+			default:
+				throw new IllegalArgumentException("Unknown piece generator " + name
+						+ ", expected " + UNIFORM + ", " + BAG + " or " + HISTORY);
+		}
+	}
+}
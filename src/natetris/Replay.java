@@ -0,0 +1,274 @@
+package natetris;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A {@code Replay} is a game, as recorded by the {@link ReplayRecorder}: the seed of its pieces, and
+ * what changed the game, tick by tick. Since the {@link GameEngine} only changes when it's told to,
+ * playing the records back from the same seed gives the very same game.<br>
+ * A replay starts with a header:
+ * <pre>
+ * int    magic, "NTRP"
+ * byte   version of the format
+ * short  version of the rules, {@link GameEngine#RULES_VERSION}
+ * long   seed of the game
+ * long   time the game started at, in milliseconds since the epoch
+ * byte   number of ticks per second
+ * byte   length of the name of the piece generator, followed by the name, in ASCII
+ * </pre>
+ * followed by a record per change, each one a varint holding the number of ticks since the previous
+ * record, shifted left by 3, plus the command. Commands 0 to 5 are the {@link GameEngine.Action}s that
+ * changed the game, {@value #GRAVITY} is the piece falling one row, and {@value #END} ends the game
+ * and is followed by a varint holding its score. Most records take a single byte.<br>
+ * Usage: {@code java -Djava.awt.headless=true natetris.Replay [replay files]}, which plays each replay
+ * headless and prints what happened in it.
+ */
+public class Replay {
+
+	/**
+	 * The first bytes of a replay, and the version of its format
+	 */
+	static final int MAGIC = 0x4E545250;
+	static final int VERSION = 1;
+
+	/**
+	 * The commands that aren't player actions
+	 */
+	static final int GRAVITY = 6;
+	static final int END = 7;
+
+	/**
+	 * The number of bits of a record holding its command
+	 */
+	static final int COMMAND_BITS = 3;
+
+	/**
+	 * The most bytes a record may take
+	 */
+	static final int MAX_RECORD_BYTES = 10;
+
+	private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+
+	/**
+	 * The header of the replay
+	 */
+	private final int rulesVersion;
+	private final long seed;
+	private final long startTime;
+	private final int ticksPerSecond;
+	private final String generator;
+
+	/**
+	 * The records, from the first to the last complete one
+	 */
+	private final ByteBuffer records;
+
+	/**
+	 * What the records tell without playing them: their number, the number of ticks they span,
+	 * whether the game was recorded until its end, and its score, if it was
+	 */
+	private int recordCount;
+	private long tickCount;
+	private boolean isComplete;
+	private long score;
+
+	private Replay(ByteBuffer data) throws IOException {
+		try {
+			if (data.getInt() != MAGIC) {
+				throw new IOException("Not a replay");
+			}
+			int version = data.get();
+			if (version != VERSION) {
+				throw new IOException("Replay has version " + version + ", expected " + VERSION);
+			}
+			this.rulesVersion = data.getShort();
+			this.seed = data.getLong();
+			this.startTime = data.getLong();
+			this.ticksPerSecond = data.get() & 0xFF;
+			byte[] name = new byte[data.get() & 0xFF];
+			data.get(name);
+			this.generator = new String(name, StandardCharsets.US_ASCII);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Replay has no complete header");
+		}
+		this.records = data.slice();
+		scan();
+	}
+
+	/**
+	 * Reads a replay
+	 * @param file - the replay
+	 * @return the replay
+	 * @throws IOException if the file can't be read, or isn't a replay
+	 */
+	public static Replay read(Path file) throws IOException {
+		return new Replay(ByteBuffer.wrap(Files.readAllBytes(file)));
+	}
+
+	/**
+	 * Goes through the records, leaving out whatever follows the last complete one,
+	 * which is left by a game that was still being recorded when the game was closed
+	 */
+	private void scan() {
+		ByteBuffer input = records.duplicate();
+		int end = 0;
+		try {
+			while (input.hasRemaining()) {
+				long record = getVarLong(input);
+				tickCount += record >>> COMMAND_BITS;
+				recordCount++;
+				if ((record & ((1 << COMMAND_BITS) - 1)) == END) {
+					score = getVarLong(input);
+					isComplete = true;
+					end = input.position();
+					break;
+				}
+				end = input.position();
+			}
+		} catch (BufferUnderflowException e) {
+			/* the last record is cut short */
+		}
+		records.limit(end);
+	}
+
+	/**
+	 * Plays the game of the replay from its beginning, as fast as the CPU allows
+	 * @param engine - the engine the game is played on, whose piece generator must be the one
+	 * the replay was recorded with
+	 * @throws IOException if the replay was recorded with other rules, or has an unknown command
+	 */
+	public void play(GameEngine engine) throws IOException {
+		if (rulesVersion != GameEngine.RULES_VERSION) {
+			throw new IOException("Replay was recorded with rules version " + rulesVersion + ", the game has version "
+					+ GameEngine.RULES_VERSION);
+		}
+		engine.resetGame(seed);
+		ByteBuffer input = records.duplicate();
+		while (input.hasRemaining()) {
+			int command = (int) getVarLong(input) & ((1 << COMMAND_BITS) - 1);
+			if (command == END) {
+				break;
+			} else if (command == GRAVITY) {
+				engine.tick();
+			} else if (command < GameEngine.Action.NEW_GAME.ordinal()) {
+				engine.step(ACTIONS[command]);
+			} else {
+				throw new IOException("Replay has an unknown command " + command);
+			}
+		}
+	}
+
+	/**
+	 * @return a new engine able to play the replay, with the piece generator it was recorded with
+	 */
+	public GameEngine createEngine() {
+		return new GameEngine(null, PieceGenerator.forName(generator), GameEngine.DEFAULT_PREVIEW_SIZE);
+	}
+
+	/**
+	 * Writes a varint: 7 bits per byte, lowest first, with the highest bit set on every byte but the last
+	 * @param output - where the varint is written
+	 * @param value - the value, taken as unsigned
+	 */
+	static void putVarLong(ByteBuffer output, long value) {
+		while ((value & ~0x7FL) != 0L) {
+			output.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		output.put((byte) value);
+	}
+
+	/**
+	 * @param input - where the varint is read from
+	 * @return the value of the varint
+	 * @throws BufferUnderflowException if the varint is cut short
+	 */
+	static long getVarLong(ByteBuffer input) {
+		long value = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = input.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		return value;
+	}
+
+	public int getRulesVersion() {
+		return rulesVersion;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public int getTicksPerSecond() {
+		return ticksPerSecond;
+	}
+
+	public String getGenerator() {
+		return generator;
+	}
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * @return true if the game was recorded until it was over
+	 */
+	public boolean isComplete() {
+		return isComplete;
+	}
+
+	/**
+	 * @return the score the game ended with, or 0 if it wasn't recorded until its end
+	 */
+	public long getScore() {
+		return score;
+	}
+
+	public static void main(String[] args) {
+		int failures = 0;
+		for (String name : args) {
+			try {
+				Replay replay = read(Paths.get(name));
+				GameEngine engine = replay.createEngine();
+				replay.play(engine);
+				String result;
+				if (!replay.isComplete()) {
+					result = "unfinished, score " + engine.getScore() + " so far";
+				} else if (engine.getScore() == replay.getScore() && engine.isGameOver()) {
+					result = "score " + engine.getScore();
+				} else {
+					result = "MISMATCH, played score " + engine.getScore() + ", recorded " + replay.getScore();
+					failures++;
+				}
+				System.out.printf("%s: %s seed %d, %tF %<tT, %.1f s in %d records, %s%n", name, replay.getGenerator(),
+						replay.getSeed(), replay.getStartTime(), (double) replay.getTickCount() / replay.getTicksPerSecond(),
+						replay.getRecordCount(), result);
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println(name + ": " + e.getMessage());
+				failures++;
+			}
+		}
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package natetris;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import utils.ChannelWriter;
+
+/**
+ * The {@code ReplayRecorder} class records every game as a {@link Replay}, in a file of its own. Records are
+ * encoded by the game thread into a buffer of a {@link ChannelWriter}, which is handed over whenever it's
+ * full, every few seconds, and when the game is over, so that the files are written by the writer thread
+ * and recording costs the game thread a few bytes per change.<br>
+ * A game still being played when the game is closed loses at most its last few seconds.
+ * Must be called by the game thread only, except for {@link #start()} and {@link #close()}.
+ */
+public class ReplayRecorder {
+
+	/**
+	 * The size of the buffers records are encoded into, and the number of buffers allocated up front
+	 */
+	private static final int BUFFER_SIZE = 4096;
+	private static final int BUFFER_COUNT = 4;
+
+	/**
+	 * How often, in seconds, the records of the game are handed over to be written
+	 */
+	private static final int FLUSH_SECONDS = 5;
+
+	private final ChannelWriter writer = new ChannelWriter(BUFFER_SIZE, BUFFER_COUNT, "Natetris replay writer");
+
+	/**
+	 * The folder replays are written to, the name of the piece generator and the number of ticks per second of the games
+	 */
+	private final Path folder;
+	private final String generator;
+	private final int ticksPerSecond;
+
+	/**
+	 * The file of the game being recorded, or null if none is, and the buffer its records are encoded into
+	 */
+	private Path file;
+	private ByteBuffer buffer;
+
+	/**
+	 * Whether the game being recorded is over, and its score. The game is told to be over while the action
+	 * that ended it is still being applied, so its end is only recorded on the next update
+	 */
+	private boolean isOver;
+	private long score;
+
+	/**
+	 * The current tick, the tick of the last record, and the tick the records were last handed over at
+	 */
+	private long tick;
+	private long lastRecordTick;
+	private long lastFlushTick;
+
+	/**
+	 * @param folder - the folder replays are written to, which is created if needed
+	 * @param generator - the name of the piece generator of the games
+	 * @param ticksPerSecond - the number of ticks per second of the games
+	 */
+	public ReplayRecorder(Path folder, String generator, int ticksPerSecond) {
+		this.folder = folder;
+		this.generator = generator;
+		this.ticksPerSecond = ticksPerSecond;
+	}
+
+	/**
+	 * Starts the writer thread, which is stopped when the JVM exits, once the records handed over are written
+	 */
+	public void start() {
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				close();
+			}
+		}, "Natetris replay shutdown"));
+	}
+
+	/**
+	 * Writes the records handed over so far, and stops the writer thread
+	 */
+	public void close() {
+		writer.close();
+	}
+
+	/**
+	 * Counts an update of the game. Must be called at the beginning of each update, before anything is recorded
+	 */
+	public void advance() {
+		if (isOver) {
+			finish();
+		}
+		tick++;
+		if (file != null && buffer.position() > 0 && tick - lastFlushTick >= (long) FLUSH_SECONDS * ticksPerSecond) {
+			flush(false);
+		}
+	}
+
+	/**
+	 * Starts recording a game that just started. A game still being recorded is left unfinished
+	 * @param seed - the seed of the game
+	 */
+	public void gameStarted(long seed) {
+		if (isOver) {
+			finish();
+		} else if (file != null) {
+			flush(true);
+		}
+		long startTime = System.currentTimeMillis();
+		this.file = folder.resolve(String.format("%tY%<tm%<td-%<tH%<tM%<tS-%016x.replay", startTime, seed));
+		this.buffer = writer.acquire();
+		this.lastRecordTick = tick;
+		this.lastFlushTick = tick;
+
+		byte[] name = generator.getBytes(StandardCharsets.US_ASCII);
+		buffer.putInt(Replay.MAGIC);
+		buffer.put((byte) Replay.VERSION);
+		buffer.putShort((short) GameEngine.RULES_VERSION);
+		buffer.putLong(seed);
+		buffer.putLong(startTime);
+		buffer.put((byte) ticksPerSecond);
+		buffer.put((byte) name.length);
+		buffer.put(name);
+	}
+
+	/**
+	 * Records an action that changed the game. New games aren't recorded, since each one has a replay of its own
+	 * @param action - the action
+	 */
+	public void actionApplied(GameEngine.Action action) {
+		if (action != GameEngine.Action.NEW_GAME) {
+			record(action.ordinal());
+		}
+	}
+
+	/**
+	 * Records the current piece falling one row
+	 */
+	public void pieceFell() {
+		record(Replay.GRAVITY);
+	}
+
+	/**
+	 * Tells the game being recorded is over. Its end is recorded, and the replay handed over to be written,
+	 * on the next update
+	 * @param score - the score of the game
+	 */
+	public void gameOver(long score) {
+		if (file != null) {
+			this.isOver = true;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * Records the end of the game, and hands the replay over to be written
+	 */
+	private void finish() {
+		isOver = false;
+		record(Replay.END);
+		Replay.putVarLong(buffer, score);
+		flush(true);
+	}
+
+	/**
+	 * Encodes a record, if a game is being recorded
+	 * @param command - the command of the record
+	 */
+	private void record(int command) {
+		if (file == null) {
+			return;
+		}
+		if (buffer.remaining() < 2 * Replay.MAX_RECORD_BYTES) {
+			writer.write(file, buffer, false);
+			buffer = writer.acquire();
+		}
+		Replay.putVarLong(buffer, ((tick - lastRecordTick) << Replay.COMMAND_BITS) | command);
+		lastRecordTick = tick;
+	}
+
+	/**
+	 * Hands the records encoded so far over to be written
+	 * @param isLast - true if the game isn't recorded any more
+	 */
+	private void flush(boolean isLast) {
+		writer.write(file, buffer, isLast);
+		lastFlushTick = tick;
+		if (isLast) {
+			file = null;
+			buffer = null;
+		} else {
+			buffer = writer.acquire();
+		}
+	}
+}
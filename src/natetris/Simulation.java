@@ -0,0 +1,104 @@
+package natetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays games headless, with no window and no frame rate, by driving a {@link GameEngine} with random
+ * actions as fast as the CPU allows. It's meant for build servers and bots, which have no display.<br>
+ * Every game is played from a seed of its own, derived from the seed of the simulation, so a simulation
+ * given the same seed plays the very same games, however many threads play them. Each thread has its
+ * own engine and its own sources of randomness, so threads share nothing while they play.<br>
+ * Usage: {@code java -Djava.awt.headless=true natetris.Simulation [games] [seed] [threads] [uniform|bag|history]}
+ */
+public class Simulation {
+
+	/**
+	 * The number of games played when none is given
+	 */
+	private static final int DEFAULT_GAME_COUNT = 10000;
+
+	/**
+	 * Player actions that may be taken between two ticks
+	 */
+	private static final GameEngine.Action[] MOVES = {
+			GameEngine.Action.MOVE_LEFT,
+			GameEngine.Action.MOVE_RIGHT,
+			GameEngine.Action.ROTATE_CLOCKWISE,
+			GameEngine.Action.ROTATE_ANTICLOCKWISE
+	};
+
+	/**
+	 * Plays one game until it's over
+	 * @param engine - the engine used to play the game
+	 * @param seed - the seed of the game, which gives both the pieces and the player's actions
+	 * @return the number of ticks the game lasted
+	 */
+	public static long playGame(GameEngine engine, long seed) {
+		SplittableRandom game = new SplittableRandom(seed);
+		engine.resetGame(game.nextLong());
+		SplittableRandom actions = game.split();
+
+		long ticks = 0;
+		while (!engine.isGameOver()) {
+			if (actions.nextBoolean()) {
+				engine.step(MOVES[actions.nextInt(MOVES.length)]);
+			}
+			engine.tick();
+			ticks++;
+		}
+		return ticks;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		final int games = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_GAME_COUNT;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : new SplittableRandom().nextLong();
+		int threadCount = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+		final String generator = (args.length > 3) ? args[3] : PieceGenerator.UNIFORM;
+
+		/*
+		 * The seeds are derived up front, so that each game gets the same seed whichever thread plays it
+		 */
+		final long[] gameSeeds = new long[games];
+		SplittableRandom seeds = new SplittableRandom(seed);
+		for (int i = 0; i < games; i++) {
+			gameSeeds[i] = seeds.nextLong();
+		}
+
+		/*
+		 * Each thread plays every threadCount-th game, and keeps its own totals
+		 */
+		final long[] ticks = new long[threadCount];
+		final long[] scores = new long[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		long begin = System.nanoTime();
+		for (int t = 0; t < threadCount; t++) {
+			final int first = t;
+			final int stride = threadCount;
+			threads[t] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					GameEngine engine = new GameEngine(null, PieceGenerator.forName(generator), GameEngine.DEFAULT_PREVIEW_SIZE);
+					for (int i = first; i < games; i += stride) {
+						ticks[first] += playGame(engine, gameSeeds[i]);
+						scores[first] += engine.getScore();
+					}
+				}
+			}, "Simulation " + t);
+			threads[t].start();
+		}
+
+		long totalTicks = 0;
+		long totalScore = 0;
+		for (int t = 0; t < threadCount; t++) {
+			threads[t].join();
+			totalTicks += ticks[t];
+			totalScore += scores[t];
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+
+		System.out.printf("%d %s games from seed %d on %d threads, %d ticks in %.2f s (%.0f games/s, %.0f ticks/s), "
+				+ "total score %d, average score %.1f%n", games, generator, seed, threadCount, totalTicks, seconds,
+				games / seconds, totalTicks / seconds, totalScore, (double) totalScore / games);
+	}
+}
@@ -0,0 +1,165 @@
+package natetris;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * The {@code TileAtlas} class holds one pre-shaded tile for each piece, and its ghost version, all packed
+ * in a single image, so that drawing a tile is just copying part of that image. The atlas is kept in an
+ * accelerated {@code VolatileImage} whenever possible, and rebuilt whenever its contents are lost, while
+ * a regular {@code BufferedImage} copy is used when acceleration isn't available.
+ */
+public class TileAtlas {
+
+	/**
+	 * The width, in pixels, of the lighter and darker edges that shade the tiles
+	 */
+	private static final int BEVEL = 3;
+
+	/**
+	 * The size of each tile
+	 */
+	private final int tileSize;
+
+	/**
+	 * The tiles, one column per piece: the regular tiles on the first row and the ghost tiles on the second
+	 */
+	private final BufferedImage sprites;
+
+	/**
+	 * The accelerated copy of {@code sprites}, and the screen configuration it was created for
+	 */
+	private VolatileImage accelerated;
+	private GraphicsConfiguration configuration;
+
+	/**
+	 * The image tiles are drawn from until the next call to {@link #validate(GraphicsConfiguration)}
+	 */
+	private Image source;
+
+	/**
+	 * @param tileSize - the size of each tile, in pixels
+	 */
+	public TileAtlas(int tileSize) {
+		this.tileSize = tileSize;
+		this.sprites = new BufferedImage(tileSize * Piece.values().length, tileSize * 2, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = sprites.getGraphics();
+		drawSprites(g);
+		g.dispose();
+		this.source = sprites;
+	}
+
+	/**
+	 * Gets the atlas ready to be drawn to a screen, creating or restoring its accelerated copy if needed.
+	 * Must be called before drawing each frame
+	 * @param configuration - the configuration of the screen, or null if the atlas won't be drawn to the screen
+	 */
+	public void validate(GraphicsConfiguration configuration) {
+		if (configuration == null) {
+			source = sprites;
+			return;
+		}
+		if (accelerated == null || this.configuration != configuration) {
+			createAccelerated(configuration);
+		}
+		int status = accelerated.validate(configuration);
+		if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+			createAccelerated(configuration);
+		} else if (status == VolatileImage.IMAGE_RESTORED) {
+			restoreAccelerated();
+		}
+		source = accelerated;
+	}
+
+	/**
+	 * @return true if the accelerated copy was lost since the last call to {@link #validate(GraphicsConfiguration)},
+	 * which means the frame must be drawn again
+	 */
+	public boolean contentsLost() {
+		return source == accelerated && accelerated.contentsLost();
+	}
+
+	/**
+	 * Draws one tile
+	 * @param g - graphics variable
+	 * @param piece - the piece from which the tile is part of
+	 * @param isGhost - true to draw the semi-transparent ghost version of the tile
+	 * @param x - the horizontal position of the tile, in pixels
+	 * @param y - the vertical position of the tile, in pixels
+	 */
+	public void drawTile(Graphics g, Piece piece, boolean isGhost, int x, int y) {
+		int sx = piece.ordinal() * tileSize;
+		int sy = isGhost ? tileSize : 0;
+		g.drawImage(source, x, y, x + tileSize, y + tileSize, sx, sy, sx + tileSize, sy + tileSize, null);
+	}
+
+	/**
+	 * Creates the accelerated copy of the atlas for a screen configuration
+	 * @param configuration - the configuration of the screen
+	 */
+	private void createAccelerated(GraphicsConfiguration configuration) {
+		if (accelerated != null) {
+			accelerated.flush();
+		}
+		this.configuration = configuration;
+		this.accelerated = configuration.createCompatibleVolatileImage(sprites.getWidth(), sprites.getHeight(), Transparency.TRANSLUCENT);
+		restoreAccelerated();
+	}
+
+	/**
+	 * Copies the tiles into the accelerated copy, whose contents are undefined when created or restored
+	 */
+	private void restoreAccelerated() {
+		Graphics2D g = accelerated.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(sprites, 0, 0, null);
+		g.dispose();
+	}
+
+	/**
+	 * Draws the regular and the ghost tile of every piece
+	 * @param g - graphics of the atlas
+	 */
+	private void drawSprites(Graphics g) {
+		for (Piece piece : Piece.values()) {
+			int x = piece.ordinal() * tileSize;
+			Color color = piece.getColor();
+
+			// regular tile, lit from the upper left corner
+			g.setColor(color);
+			g.fillRect(x, 0, tileSize, tileSize);
+			g.setColor(blend(color, Color.WHITE, 0.45f));
+			g.fillRect(x, 0, tileSize, BEVEL);
+			g.fillRect(x, 0, BEVEL, tileSize);
+			g.setColor(blend(color, Color.BLACK, 0.35f));
+			g.fillRect(x, tileSize - BEVEL, tileSize, BEVEL);
+			g.fillRect(x + tileSize - BEVEL, BEVEL, BEVEL, tileSize - BEVEL);
+
+			// ghost tile, a semi transparent square with a brighter outline
+			g.setColor(piece.getGhostColor(Piece.GHOST_ALPHA));
+			g.fillRect(x, tileSize, tileSize, tileSize);
+			g.setColor(piece.getGhostColor(Piece.GHOST_ALPHA * 2));
+			g.drawRect(x, tileSize, tileSize - 1, tileSize - 1);
+		}
+	}
+
+	/**
+	 * @param color - the original color
+	 * @param target - the color mixed into the original one
+	 * @param amount - how much of {@code target} is mixed, from 0 to 1
+	 * @return a mix of both colors
+	 */
+	private static Color blend(Color color, Color target, float amount) {
+		return new Color(
+				(int) (color.getRed() + (target.getRed() - color.getRed()) * amount),
+				(int) (color.getGreen() + (target.getGreen() - color.getGreen()) * amount),
+				(int) (color.getBlue() + (target.getBlue() - color.getBlue()) * amount));
+	}
+}
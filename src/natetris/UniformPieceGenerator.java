@@ -0,0 +1,22 @@
+package natetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks every piece at random, each kind being as likely as any other, whatever came before.
+ * Long droughts of a piece, and floods of another, may happen.
+ */
+public class UniformPieceGenerator implements PieceGenerator {
+
+	private SplittableRandom random = new SplittableRandom();
+
+	@Override
+	public void setSeed(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+
+	@Override
+	public Piece next() {
+		return Piece.fromOrdinal(random.nextInt(GameEngine.PIECES_COUNT));
+	}
+}
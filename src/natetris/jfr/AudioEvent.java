@@ -0,0 +1,25 @@
+package natetris.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded around starting a voice clip
+ */
+@Name("natetris.Audio")
+@Label("Audio")
+@Category("Natetris")
+@Description("A voice clip was started")
+public class AudioEvent extends Event {
+
+	@Label("Cleared Lines")
+	@Description("The number of lines whose clearing the voice celebrates")
+	public int clearedLines;
+
+	@Label("Clip")
+	@Description("The index of the clip among those for the same number of lines")
+	public int clip;
+}
@@ -0,0 +1,24 @@
+package natetris.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded around the search for filled lines after a piece lands, whenever lines are cleared
+ */
+@Name("natetris.LineClear")
+@Label("Line Clear")
+@Category("Natetris")
+@Description("Filled lines were removed from the board")
+public class LineClearEvent extends Event {
+
+	@Label("Cleared Rows")
+	@Description("The number of rows cleared")
+	public int rowCount;
+
+	@Label("Lowest Cleared Row")
+	public int lowestRow;
+}
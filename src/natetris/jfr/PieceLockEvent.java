@@ -0,0 +1,29 @@
+package natetris.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded whenever a piece is added to the board
+ */
+@Name("natetris.PieceLock")
+@Label("Piece Lock")
+@Category("Natetris")
+@Description("A piece landed and was added to the board")
+public class PieceLockEvent extends Event {
+
+	@Label("Piece")
+	public String piece;
+
+	@Label("Column")
+	public int col;
+
+	@Label("Row")
+	public int row;
+
+	@Label("Rotation")
+	public int rotation;
+}
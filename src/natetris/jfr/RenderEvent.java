@@ -0,0 +1,28 @@
+package natetris.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded around the drawing of a component of the game window
+ */
+@Name("natetris.Render")
+@Label("Render")
+@Category("Natetris")
+@Description("A component of the game was drawn")
+public class RenderEvent extends Event {
+
+	@Label("Component")
+	public String component;
+
+	@Label("Width")
+	@Description("The width of the region drawn, in pixels")
+	public int width;
+
+	@Label("Height")
+	@Description("The height of the region drawn, in pixels")
+	public int height;
+}
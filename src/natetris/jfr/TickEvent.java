@@ -0,0 +1,32 @@
+package natetris.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded around each game update, that is, each call to {@code Natetris.updateGame}
+ */
+@Name("natetris.Tick")
+@Label("Game Tick")
+@Category("Natetris")
+@Description("A fixed step of the game logic")
+public class TickEvent extends Event {
+
+	@Label("Falling Piece Moved Down")
+	public boolean pieceFell;
+
+	@Label("Soft Dropping")
+	@Description("Whether the player was holding the accelerating key")
+	public boolean isSoftDropping;
+
+	@Label("Game Speed")
+	@Description("The speed of the game, in rows per second")
+	public float gameSpeed;
+
+	@Label("Collision Checks")
+	@Description("The collision checks made by the board during the update")
+	public long collisionChecks;
+}
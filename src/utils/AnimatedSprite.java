@@ -0,0 +1,300 @@
+package utils;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * AnimatedSprite is an animated GIF decoded once, when it's loaded, into a single sprite sheet holding
+ * every frame already composed, along with how long each frame lasts. Playing it is then only a matter
+ * of picking the frame for the time passed and copying it from the sheet, so no decoding happens while
+ * the game runs, and the animation is drawn when the game decides, instead of whenever AWT gets a frame.<br>
+ * All sprite sheets share a memory budget. A GIF that doesn't fit in what's left of it is loaded
+ * with fewer frames, each lasting longer.
+ */
+public class AnimatedSprite {
+
+	/**
+	 * The most memory, in bytes, taken by all sprite sheets together
+	 */
+	public static final long MEMORY_BUDGET = 8L * 1024L * 1024L;
+
+	/**
+	 * The memory, in bytes, taken by the sprite sheets loaded so far
+	 */
+	private static final AtomicLong usedMemory = new AtomicLong();
+
+	/**
+	 * The shortest delay of a frame, in milliseconds. Like browsers do, shorter delays are
+	 * taken as {@code DEFAULT_DELAY_MILLIS}, as most GIFs having them weren't meant to play that fast
+	 */
+	private static final int MIN_DELAY_MILLIS = 20;
+	private static final int DEFAULT_DELAY_MILLIS = 100;
+
+	/**
+	 * Names of the metadata format of GIF frames and of the nodes read from it
+	 */
+	private static final String STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+	private static final String IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+
+	/**
+	 * The frames, side by side in rows of {@code columns} frames
+	 */
+	private final BufferedImage sheet;
+	private final int columns;
+
+	/**
+	 * The size of each frame
+	 */
+	private final int width;
+	private final int height;
+
+	/**
+	 * The time, in milliseconds since the animation started, at which each frame ends,
+	 * and the duration of the whole animation
+	 */
+	private final long[] frameEnds;
+	private final long duration;
+
+	private AnimatedSprite(BufferedImage sheet, int columns, int width, int height, long[] frameEnds) {
+		this.sheet = sheet;
+		this.columns = columns;
+		this.width = width;
+		this.height = height;
+		this.frameEnds = frameEnds;
+		this.duration = frameEnds[frameEnds.length - 1];
+	}
+
+	/**
+	 * Decodes an animated GIF into a sprite sheet
+	 * @param url - the location of the GIF
+	 * @return the animation
+	 * @throws IOException if the GIF can't be read
+	 */
+	public static AnimatedSprite read(URL url) throws IOException {
+		InputStream stream = url.openStream();
+		try {
+			return read(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Reads a GIF and decodes all of its frames
+	 * @param stream - the GIF, which is left open
+	 * @return the animation
+	 * @throws IOException if the GIF can't be read
+	 */
+	public static AnimatedSprite read(InputStream stream) throws IOException {
+		ImageInputStream input = null;
+		ImageReader reader = null;
+		try {
+			input = ImageIO.createImageInputStream(stream);
+			Iterator<ImageReader> readers = (input != null) ? ImageIO.getImageReaders(input) : null;
+			if (readers == null || !readers.hasNext()) {
+				throw new IOException("No image reader for the GIF");
+			}
+			reader = readers.next();
+			reader.setInput(input);
+			return decode(reader);
+		} finally {
+			if (reader != null) {
+				reader.dispose();
+			}
+			if (input != null) {
+				input.close();
+			}
+		}
+	}
+
+	/**
+	 * Composes every frame of the GIF, as it's meant to be seen, and packs them into a sprite sheet
+	 * @param reader - the reader of the GIF
+	 * @return the animation
+	 * @throws IOException if the GIF can't be read
+	 */
+	private static AnimatedSprite decode(ImageReader reader) throws IOException {
+		int frameCount = reader.getNumImages(true);
+		int width = reader.getWidth(0);
+		int height = reader.getHeight(0);
+		Element screen = getChild(reader.getStreamMetadata(), STREAM_FORMAT, "LogicalScreenDescriptor");
+		if (screen != null) {
+			width = Integer.parseInt(screen.getAttribute("logicalScreenWidth"));
+			height = Integer.parseInt(screen.getAttribute("logicalScreenHeight"));
+		}
+
+		/*
+		 * Frames that don't fit in the memory budget are merged with their neighbors, which is decided
+		 * from the size of the frames before any of them is decoded. Each frame kept is the first of
+		 * {@code stride} frames, and lasts as long as all of them
+		 */
+		long frameBytes = (long) width * height * 4L;
+		int stride = 1;
+		int keptCount = frameCount;
+		while (keptCount > 1 && !reserve(keptCount * frameBytes)) {
+			stride *= 2;
+			keptCount = (frameCount + stride - 1) / stride;
+		}
+		if (keptCount == 1 && !reserve(frameBytes)) {
+			usedMemory.addAndGet(frameBytes);
+			System.err.println("Animated sprites are over their memory budget of " + MEMORY_BUDGET + " bytes");
+		}
+
+		int columns = (int) Math.ceil(Math.sqrt(keptCount));
+		int rows = (keptCount + columns - 1) / columns;
+		BufferedImage sheet = new BufferedImage(columns * width, rows * height, BufferedImage.TYPE_INT_ARGB);
+		Graphics sheetGraphics = sheet.getGraphics();
+		long[] frameEnds = new long[keptCount];
+		long time = 0L;
+
+		/*
+		 * Each frame only holds what changed since the previous one, so they're drawn one over
+		 * the other, and then cleared or restored as the disposal method of each frame says
+		 */
+		BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int index = 0; index < frameCount; index++) {
+			BufferedImage image = reader.read(index);
+			IIOMetadata metadata = reader.getImageMetadata(index);
+			Element descriptor = getChild(metadata, IMAGE_FORMAT, "ImageDescriptor");
+			Element control = getChild(metadata, IMAGE_FORMAT, "GraphicControlExtension");
+			int x = (descriptor != null) ? Integer.parseInt(descriptor.getAttribute("imageLeftPosition")) : 0;
+			int y = (descriptor != null) ? Integer.parseInt(descriptor.getAttribute("imageTopPosition")) : 0;
+			String disposal = (control != null) ? control.getAttribute("disposalMethod") : "none";
+			int delay = (control != null) ? Integer.parseInt(control.getAttribute("delayTime")) * 10 : 0;
+
+			BufferedImage previous = "restoreToPrevious".equals(disposal) ? copy(canvas) : null;
+			Graphics2D g = canvas.createGraphics();
+			g.drawImage(image, x, y, null);
+			int kept = index / stride;
+			if (index % stride == 0) {
+				sheetGraphics.drawImage(canvas, (kept % columns) * width, (kept / columns) * height, null);
+			}
+			time += (delay < MIN_DELAY_MILLIS) ? DEFAULT_DELAY_MILLIS : delay;
+			frameEnds[kept] = time;
+
+			if ("restoreToBackgroundColor".equals(disposal)) {
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(x, y, image.getWidth(), image.getHeight());
+			} else if (previous != null) {
+				g.setComposite(AlphaComposite.Src);
+				g.drawImage(previous, 0, 0, null);
+			}
+			g.dispose();
+		}
+		sheetGraphics.dispose();
+		return new AnimatedSprite(sheet, columns, width, height, frameEnds);
+	}
+
+	/**
+	 * Takes memory from the budget, if there's enough left
+	 * @param bytes - the memory needed
+	 * @return true if the memory was taken, false if there isn't enough left
+	 */
+	private static boolean reserve(long bytes) {
+		long used;
+		do {
+			used = usedMemory.get();
+			if (used + bytes > MEMORY_BUDGET) {
+				return false;
+			}
+		} while (!usedMemory.compareAndSet(used, used + bytes));
+		return true;
+	}
+
+	/**
+	 * @param image - an image
+	 * @return a copy of the image
+	 */
+	private static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		Graphics g = copy.getGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+
+	/**
+	 * @param metadata - the metadata of the GIF or of one of its frames
+	 * @param format - the format of the metadata
+	 * @param name - the name of the node
+	 * @return the first node called {@code name} under the root of the metadata, or null if there's none
+	 */
+	private static Element getChild(IIOMetadata metadata, String format, String name) {
+		if (metadata == null) {
+			return null;
+		}
+		Node root = metadata.getAsTree(format);
+		for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (name.equals(child.getNodeName())) {
+				return (Element) child;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param elapsedMillis - the time passed since the animation started, in milliseconds
+	 * @return the frame to be shown at that time. The animation loops forever
+	 */
+	public int getFrameAt(long elapsedMillis) {
+		long time = elapsedMillis % duration;
+		int low = 0;
+		int high = frameEnds.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (frameEnds[middle] <= time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Draws one frame of the animation
+	 * @param g - graphics variable
+	 * @param frame - the frame
+	 * @param x - the horizontal position of the frame
+	 * @param y - the vertical position of the frame
+	 */
+	public void draw(Graphics g, int frame, int x, int y) {
+		int sx = (frame % columns) * width;
+		int sy = (frame / columns) * height;
+		g.drawImage(sheet, x, y, x + width, y + height, sx, sy, sx + width, sy + height, null);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getFrameCount() {
+		return frameEnds.length;
+	}
+
+	/**
+	 * @return the memory, in bytes, taken by the sprite sheets loaded so far
+	 */
+	public static long getUsedMemory() {
+		return usedMemory.get();
+	}
+}
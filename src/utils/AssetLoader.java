@@ -0,0 +1,319 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import utils.sound.MusicStream;
+import utils.sound.Sound;
+
+/**
+ * AssetLoader reads and decodes the game's images and sounds in the background, several at a time,
+ * so that the welcome screen shows up right away and the slow disk reads overlap instead of
+ * following each other. Each asset is handed over through a {@code CompletableFuture}.<br>
+ * Assets are read from the {@link AssetPack} if there's one, or else from the classpath, where they're
+ * listed by the manifest of the packs. Either way, the assets of a category can be looked up by name.<br>
+ * Assets that can't be loaded are reported and handed over as null, like the game always did
+ * with missing files, so that one missing file doesn't keep the others from loading.
+ */
+public class AssetLoader {
+
+	/**
+	 * Decodes an asset from its file
+	 * @param <T> - the type of the asset
+	 */
+	public interface Decoder<T> {
+
+		/**
+		 * @param input - the file, which is closed once it's decoded
+		 * @return the asset
+		 * @throws IOException if the file can't be read or decoded
+		 */
+		T decode(InputStream input) throws IOException;
+	}
+
+	/**
+	 * Loads an asset, on a loading thread
+	 * @param <T> - the type of the asset
+	 */
+	private interface Task<T> {
+
+		T load() throws IOException;
+	}
+
+	/**
+	 * Receives the progress of the loader, on the thread that loaded the asset
+	 */
+	public interface Listener {
+
+		/**
+		 * @param loadedCount - the number of assets loaded so far, including those that couldn't be
+		 * @param totalCount - the number of assets asked for so far
+		 */
+		void progressChanged(int loadedCount, int totalCount);
+	}
+
+	/**
+	 * The most assets decoded at once. Disks rarely serve more reads in parallel faster,
+	 * and decoding would take the processor away from the welcome screen
+	 */
+	private static final int MAX_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * How long, in seconds, an idle loading thread lives, so that none is left once everything is loaded
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 1L;
+
+	private final ExecutorService executor;
+
+	/**
+	 * The pack the assets are read from, or null if they're read from the classpath,
+	 * and the assets that can be loaded, as listed by the pack or by the manifest
+	 */
+	private final AssetPack pack;
+	private final List<AssetPack.Entry> index;
+
+	/**
+	 * The assets asked for, and the number of those already loaded
+	 */
+	private final List<CompletableFuture<?>> assets = new ArrayList<>();
+	private final AtomicInteger loadedCount = new AtomicInteger();
+
+	private volatile Listener listener;
+
+	/**
+	 * @param pack - the pack the assets are read from, or null to read them from the classpath
+	 */
+	public AssetLoader(AssetPack pack) {
+		this.pack = pack;
+		this.index = (pack != null) ? pack.getEntries() : readManifest();
+
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					private final AtomicInteger threadCount = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "Natetris asset loader " + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+	}
+
+	/**
+	 * @param listener - receives the progress of the loader
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the assets listed by the manifest in the classpath, or none if it can't be read
+	 */
+	private static List<AssetPack.Entry> readManifest() {
+		InputStream input = AssetLoader.class.getClassLoader().getResourceAsStream(AssetPack.MANIFEST);
+		if (input == null) {
+			System.err.println("Could not find " + AssetPack.MANIFEST + ", no asset will be found by category");
+			return new ArrayList<>();
+		}
+		try {
+			return AssetPack.readManifest(input);
+		} catch (IOException e) {
+			System.err.println("Could not read " + AssetPack.MANIFEST + ": " + e);
+			return new ArrayList<>();
+		} finally {
+			try {
+				input.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @param category - a category of assets
+	 * @return the names of the assets of the category, in the order they're listed
+	 */
+	public List<String> getNames(String category) {
+		List<String> names = new ArrayList<>();
+		for (AssetPack.Entry entry : index) {
+			if (entry.getCategory().equals(category)) {
+				names.add(entry.getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @param category - a category of assets, which is expected to have a single one
+	 * @return the name of the first asset of the category, or null if there's none, which is reported
+	 */
+	public String getName(String category) {
+		List<String> names = getNames(category);
+		if (names.isEmpty()) {
+			System.err.println("Could not find any asset of category " + category);
+			return null;
+		}
+		return names.get(0);
+	}
+
+	/**
+	 * Loads an asset in the background. Assets are started in the order they're asked for
+	 * @param name - the name of the asset, which is its path in the classpath
+	 * @param decoder - decodes the asset from its file
+	 * @return the asset, once it's loaded, or null if it couldn't be
+	 */
+	public <T> CompletableFuture<T> load(final String name, final Decoder<T> decoder) {
+		return submit(name, new Task<T>() {
+
+			@Override
+			public T load() throws IOException {
+				InputStream input = open(name);
+				try {
+					return decoder.decode(input);
+				} finally {
+					input.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Loads a sound in the background. Sounds of the pack are already decoded, and are played right from it
+	 * @param name - the name of the sound
+	 * @return the sound, once it's loaded, or null if it couldn't be
+	 */
+	public CompletableFuture<Sound> loadSound(final String name) {
+		return submit(name, new Task<Sound>() {
+
+			@Override
+			public Sound load() throws IOException {
+				AssetPack.Entry entry = (pack != null) ? pack.getEntry(name) : null;
+				if (entry != null && entry.getType() == AssetPack.Type.PCM) {
+					return Sound.wrap(pack.getSamples(entry));
+				}
+				InputStream input = open(name);
+				try {
+					return Sound.read(input);
+				} finally {
+					input.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Prepares a music to be streamed, which doesn't load anything until the stream is started
+	 * @param name - the name of the music
+	 * @return the stream of the music, or null if there's no such music
+	 */
+	public MusicStream openMusic(String name) {
+		AssetPack.Entry entry = (pack != null) ? pack.getEntry(name) : null;
+		if (entry != null && entry.getType() == AssetPack.Type.PCM) {
+			return new MusicStream(pack.getSamples(entry));
+		}
+		URL url = AssetLoader.class.getClassLoader().getResource(name);
+		if (url == null) {
+			System.err.println("Could not load " + name + ": no such file");
+			return null;
+		}
+		return new MusicStream(url);
+	}
+
+	/**
+	 * @param name - the name of an asset
+	 * @return the file of the asset, from the pack if it's there, or else from the classpath
+	 * @throws IOException if there's no such asset
+	 */
+	private InputStream open(String name) throws IOException {
+		AssetPack.Entry entry = (pack != null) ? pack.getEntry(name) : null;
+		if (entry != null && entry.getType() == AssetPack.Type.FILE) {
+			return pack.openStream(entry);
+		}
+		InputStream input = AssetLoader.class.getClassLoader().getResourceAsStream(name);
+		if (input == null) {
+			throw new IOException("No such file");
+		}
+		return new BufferedInputStream(input);
+	}
+
+	/**
+	 * Runs a task on a loading thread, and counts the asset once it's loaded
+	 * @param name - the name of the asset
+	 * @param task - loads the asset
+	 * @return the asset, once it's loaded, or null if it couldn't be
+	 */
+	private <T> CompletableFuture<T> submit(final String name, final Task<T> task) {
+		final CompletableFuture<T> asset = new CompletableFuture<>();
+		synchronized (assets) {
+			assets.add(asset);
+		}
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				T value = null;
+				try {
+					value = task.load();
+				} catch (IOException | RuntimeException e) {
+					System.err.println("Could not load " + name + ": " + e);
+				}
+				asset.complete(value);
+				assetLoaded();
+			}
+		});
+		return asset;
+	}
+
+	/**
+	 * Counts a loaded asset, once it's handed over, and reports the progress
+	 */
+	private void assetLoaded() {
+		int loaded = loadedCount.incrementAndGet();
+		Listener currentListener = listener;
+		if (currentListener != null) {
+			currentListener.progressChanged(loaded, getTotalCount());
+		}
+	}
+
+	/**
+	 * @return completes once every asset asked for so far is loaded
+	 */
+	public CompletableFuture<Void> whenAllLoaded() {
+		synchronized (assets) {
+			return CompletableFuture.allOf(assets.toArray(new CompletableFuture<?>[assets.size()]));
+		}
+	}
+
+	public int getLoadedCount() {
+		return loadedCount.get();
+	}
+
+	public int getTotalCount() {
+		synchronized (assets) {
+			return assets.size();
+		}
+	}
+
+	/**
+	 * @return the time, in milliseconds, since the JVM started
+	 */
+	public static long getUptimeMillis() {
+		return ManagementFactory.getRuntimeMXBean().getUptime();
+	}
+}
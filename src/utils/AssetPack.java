@@ -0,0 +1,300 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AssetPack is a single file holding every asset of the game, built by {@link AssetPacker}. It's mapped
+ * into memory as a whole, so an asset is read straight from the mapping, without being copied first,
+ * and sounds are kept already decoded, so they're played right from the mapping.<br>
+ * The file starts with an index:
+ * <pre>
+ * int    magic, "NTPK"
+ * int    version
+ * int    entry count
+ * entry count times:
+ *   UTF  name, the path the asset had in the classpath
+ *   byte type, the ordinal of a {@link Type}
+ *   UTF  category, such as "voice.2" for the voices played when two lines are cleared
+ *   long offset of the asset in the file
+ *   long length of the asset, in bytes
+ * </pre>
+ * followed by the assets themselves. The assets to be packed, and their categories, are listed
+ * by the {@value #MANIFEST} manifest, which is also used to find them in the classpath when there's no pack.
+ */
+public class AssetPack {
+
+	/**
+	 * The first bytes of a pack, and the version of its format
+	 */
+	public static final int MAGIC = 0x4E54504B;
+	public static final int VERSION = 1;
+
+	/**
+	 * The name of the manifest in the classpath, and the pack opened unless the
+	 * {@code natetris.assetPack} system property names another one
+	 */
+	public static final String MANIFEST = "assets.txt";
+	public static final String DEFAULT_PATH = "natetris.pack";
+
+	/**
+	 * How an asset is kept in a pack
+	 */
+	public enum Type {
+		/**
+		 * The bytes of the file, as it was in the classpath
+		 */
+		FILE,
+		/**
+		 * The samples of an audio file, decoded into the format of the {@link utils.sound.AudioMixer}
+		 */
+		PCM;
+
+		/**
+		 * @param name - the name of an asset
+		 * @return how the asset is packed, according to its extension
+		 */
+		public static Type of(String name) {
+			return name.toLowerCase().endsWith(".wav") ? PCM : FILE;
+		}
+	}
+
+	/**
+	 * An asset listed by the index of a pack, or by the manifest, in which case it has no offset nor length
+	 */
+	public static class Entry {
+
+		private final String name;
+		private final Type type;
+		private final String category;
+		private final long offset;
+		private final long length;
+
+		public Entry(String name, Type type, String category, long offset, long length) {
+			this.name = name;
+			this.type = type;
+			this.category = category;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public String getCategory() {
+			return category;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getLength() {
+			return length;
+		}
+	}
+
+	/**
+	 * The whole file, mapped into memory, and its index by name, in the order of the file
+	 */
+	private final MappedByteBuffer data;
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	/**
+	 * Maps a pack into memory and reads its index
+	 * @param file - the pack
+	 * @throws IOException if the pack can't be read, or isn't a pack
+	 */
+	public AssetPack(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			input.close(); // the mapping stays valid once the file is closed
+		}
+
+		DataInputStream index = new DataInputStream(new ByteBufferInputStream(data.duplicate()));
+		if (index.readInt() != MAGIC) {
+			throw new IOException(file + " is not an asset pack");
+		}
+		int version = index.readInt();
+		if (version != VERSION) {
+			throw new IOException(file + " has version " + version + ", expected " + VERSION);
+		}
+		int count = index.readInt();
+		for (int i = 0; i < count; i++) {
+			String name = index.readUTF();
+			int type = index.readByte();
+			String category = index.readUTF();
+			long offset = index.readLong();
+			long length = index.readLong();
+			if (type < 0 || type >= Type.values().length || offset < 0 || length < 0 || offset + length > data.capacity()) {
+				throw new IOException(file + " has a broken entry: " + name);
+			}
+			entries.put(name, new Entry(name, Type.values()[type], category, offset, length));
+		}
+	}
+
+	/**
+	 * Opens the pack named by the {@code natetris.assetPack} system property, or {@value #DEFAULT_PATH}
+	 * @return the pack, or null if there's none, or it can't be read
+	 */
+	public static AssetPack openDefault() {
+		File file = new File(System.getProperty("natetris.assetPack", DEFAULT_PATH));
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return new AssetPack(file);
+		} catch (IOException e) {
+			System.err.println("Could not open asset pack, loading assets one by one: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param name - the name of an asset
+	 * @return the asset, or null if it isn't in the pack
+	 */
+	public Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * @return every asset in the pack, in the order of the file
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+	}
+
+	/**
+	 * @param entry - an asset of the pack
+	 * @return the bytes of the asset, straight from the mapping
+	 */
+	public ByteBuffer getBytes(Entry entry) {
+		ByteBuffer bytes = data.duplicate();
+		bytes.position((int) entry.getOffset());
+		bytes.limit((int) (entry.getOffset() + entry.getLength()));
+		return bytes.slice();
+	}
+
+	/**
+	 * @param entry - an asset of the pack
+	 * @return a stream of the bytes of the asset, read straight from the mapping
+	 */
+	public InputStream openStream(Entry entry) {
+		return new ByteBufferInputStream(getBytes(entry));
+	}
+
+	/**
+	 * @param entry - a {@link Type#PCM} asset of the pack
+	 * @return the samples of the asset, straight from the mapping
+	 */
+	public ShortBuffer getSamples(Entry entry) {
+		return getBytes(entry).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+	}
+
+	/**
+	 * Reads a manifest, which has an asset per line, as its name followed by its category.
+	 * Empty lines and lines starting with '#' are skipped
+	 * @param input - the manifest
+	 * @return the assets, without offsets nor lengths
+	 * @throws IOException if the manifest can't be read, or has a line without a category
+	 */
+	public static List<Entry> readManifest(InputStream input) throws IOException {
+		List<Entry> manifest = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("\\s+");
+			if (fields.length != 2) {
+				throw new IOException("Expected a name and a category in the manifest, got: " + line);
+			}
+			manifest.add(new Entry(fields[0], Type.of(fields[0]), fields[1], 0L, 0L));
+		}
+		return manifest;
+	}
+
+	/**
+	 * Streams the bytes of a buffer, from its position to its limit
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long count) {
+			int skipped = (int) Math.max(0L, Math.min(count, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int limit) {
+			buffer.mark();
+		}
+
+		@Override
+		public synchronized void reset() {
+			buffer.reset();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import utils.sound.AudioMixer;
+
+/**
+ * AssetPacker builds an {@link AssetPack} out of the assets listed by a manifest. Audio files are
+ * decoded while they're packed, so that the game doesn't have to.<br>
+ * Usage: {@code java utils.AssetPacker [output] [root]}, where {@code root} is the folder holding the
+ * manifest and the assets, the current one by default, and {@code output} is {@value AssetPack#DEFAULT_PATH} by default.
+ */
+public class AssetPacker {
+
+	public static void main(String[] args) {
+		File output = new File((args.length > 0) ? args[0] : AssetPack.DEFAULT_PATH);
+		File root = new File((args.length > 1) ? args[1] : ".");
+		try {
+			int count = pack(root, output);
+			System.out.println("Packed " + count + " assets into " + output + " (" + output.length() + " bytes)");
+		} catch (IOException e) {
+			System.err.println("Could not pack the assets: " + e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Packs the assets listed by the manifest of a folder
+	 * @param root - the folder holding the manifest and the assets
+	 * @param output - the pack to be written
+	 * @return the number of assets packed
+	 * @throws IOException if an asset can't be read, or the pack can't be written
+	 */
+	public static int pack(File root, File output) throws IOException {
+		List<AssetPack.Entry> manifest;
+		InputStream manifestInput = new FileInputStream(new File(root, AssetPack.MANIFEST));
+		try {
+			manifest = AssetPack.readManifest(manifestInput);
+		} finally {
+			manifestInput.close();
+		}
+
+		List<byte[]> contents = new ArrayList<>();
+		for (AssetPack.Entry entry : manifest) {
+			File file = new File(root, entry.getName());
+			if (entry.getType() == AssetPack.Type.PCM) {
+				contents.add(decode(file));
+			} else {
+				contents.add(Files.readAllBytes(file.toPath()));
+			}
+		}
+
+		/*
+		 * The index has the same size whatever the offsets, so it's measured first,
+		 * and then written again with the offsets of the assets that follow it
+		 */
+		long offset = writeIndex(new DataOutputStream(new ByteArrayOutputStream()), manifest, contents, 0L);
+		DataOutputStream pack = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+		try {
+			writeIndex(pack, manifest, contents, offset);
+			for (byte[] content : contents) {
+				pack.write(content);
+			}
+		} finally {
+			pack.close();
+		}
+		return manifest.size();
+	}
+
+	/**
+	 * @param output - where the index is written
+	 * @param manifest - the assets
+	 * @param contents - the bytes of each asset, as packed
+	 * @param offset - the offset of the first asset
+	 * @return the size of the index, in bytes
+	 * @throws IOException if the index can't be written
+	 */
+	private static long writeIndex(DataOutputStream output, List<AssetPack.Entry> manifest, List<byte[]> contents,
+			long offset) throws IOException {
+		output.writeInt(AssetPack.MAGIC);
+		output.writeInt(AssetPack.VERSION);
+		output.writeInt(manifest.size());
+		for (int i = 0; i < manifest.size(); i++) {
+			AssetPack.Entry entry = manifest.get(i);
+			output.writeUTF(entry.getName());
+			output.writeByte(entry.getType().ordinal());
+			output.writeUTF(entry.getCategory());
+			output.writeLong(offset);
+			output.writeLong(contents.get(i).length);
+			offset += contents.get(i).length;
+		}
+		output.flush();
+		return output.size();
+	}
+
+	/**
+	 * @param file - an audio file
+	 * @return the samples of the file, in the format of the mixer
+	 * @throws IOException if the file can't be read, or converted
+	 */
+	private static byte[] decode(File file) throws IOException {
+		InputStream stream = new BufferedInputStream(new FileInputStream(file));
+		AudioInputStream input = null;
+		try {
+			input = AudioSystem.getAudioInputStream(stream);
+			if (!input.getFormat().matches(AudioMixer.FORMAT)) {
+				input = AudioSystem.getAudioInputStream(AudioMixer.FORMAT, input);
+			}
+			ByteArrayOutputStream samples = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				samples.write(buffer, 0, count);
+			}
+			return samples.toByteArray();
+		} catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+			throw new IOException("Can't convert " + file, e);
+		} finally {
+			if (input != null) {
+				input.close();
+			}
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * ChannelWriter appends bytes to files on a thread of its own, so that the thread producing them never
+ * waits for the disk. The producer fills a buffer taken from a pool, hands it over with {@link #write(Path, ByteBuffer, boolean)},
+ * and the writer thread appends it to the file through a {@code FileChannel}, then gives the buffer back
+ * to the pool. Buffers are direct, so the channel writes them without copying, and are only allocated
+ * when the pool runs out, which means the writer fell behind.<br>
+ * A file that can't be written is reported once, and the rest of its bytes are dropped.
+ */
+public class ChannelWriter {
+
+	/**
+	 * Bytes handed over for a file, or the signal for the writer thread to stop when {@code file} is null
+	 */
+	private static class Batch {
+
+		private final Path file;
+		private final ByteBuffer bytes;
+		private final boolean isLast;
+
+		private Batch(Path file, ByteBuffer bytes, boolean isLast) {
+			this.file = file;
+			this.bytes = bytes;
+			this.isLast = isLast;
+		}
+	}
+
+	private static final Batch STOP = new Batch(null, null, true);
+
+	/**
+	 * The size of the buffers, in bytes, and the buffers ready to be filled
+	 */
+	private final int bufferSize;
+	private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The batches waiting to be written, oldest first
+	 */
+	private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+
+	/**
+	 * The file being written, as seen by the writer thread, its channel, and the last file that
+	 * couldn't be written, whose batches are dropped
+	 */
+	private Path currentFile;
+	private FileChannel channel;
+	private Path failedFile;
+
+	private final String threadName;
+	private boolean isRunning;
+	private Thread thread;
+
+	/**
+	 * @param bufferSize - the size of the buffers, in bytes
+	 * @param bufferCount - the number of buffers allocated up front
+	 * @param threadName - the name of the writer thread
+	 */
+	public ChannelWriter(int bufferSize, int bufferCount, String threadName) {
+		this.bufferSize = bufferSize;
+		this.threadName = threadName;
+		for (int i = 0; i < bufferCount; i++) {
+			pool.add(ByteBuffer.allocateDirect(bufferSize));
+		}
+	}
+
+	/**
+	 * Starts the writer thread
+	 */
+	public synchronized void start() {
+		if (isRunning) {
+			return;
+		}
+		isRunning = true;
+		thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Writes the batches handed over so far, closes the file being written, and stops the writer thread.
+	 * Batches handed over afterwards are dropped
+	 */
+	public void close() {
+		Thread writer;
+		synchronized (this) {
+			isRunning = false;
+			writer = thread;
+			thread = null;
+			if (writer != null) {
+				batches.add(STOP);
+			}
+		}
+		if (writer != null) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return an empty buffer, to be filled and handed over with {@link #write(Path, ByteBuffer, boolean)}
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = pool.poll();
+		return (buffer != null) ? buffer : ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Hands bytes over to the writer thread, which appends them to a file. Never waits for the disk
+	 * @param file - the file the bytes are appended to, which is created if needed
+	 * @param bytes - a buffer from {@link #acquire()}, holding the bytes from 0 to its position.
+	 * It's owned by the writer from now on
+	 * @param isLast - true if nothing else will be written to the file, which is then closed
+	 */
+	public void write(Path file, ByteBuffer bytes, boolean isLast) {
+		bytes.flip();
+		/*
+		 * Checked and queued along with close(), so that no batch is queued after the writer thread was told to stop
+		 */
+		synchronized (this) {
+			if (isRunning) {
+				batches.add(new Batch(file, bytes, isLast));
+				return;
+			}
+		}
+		release(bytes);
+	}
+
+	/**
+	 * @param buffer - a buffer given back to the pool
+	 */
+	private void release(ByteBuffer buffer) {
+		buffer.clear();
+		pool.add(buffer);
+	}
+
+	/**
+	 * Writes the batches as they're handed over, until told to stop
+	 */
+	private void writeLoop() {
+		try {
+			while (true) {
+				Batch batch = batches.take();
+				if (batch == STOP) {
+					break;
+				}
+				try {
+					append(batch);
+				} finally {
+					release(batch.bytes);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Appends a batch to its file, opening it first if another file was being written
+	 * @param batch - the batch
+	 */
+	private void append(Batch batch) {
+		if (batch.file.equals(failedFile)) {
+			return;
+		}
+		try {
+			if (!batch.file.equals(currentFile)) {
+				closeChannel();
+				Path folder = batch.file.toAbsolutePath().getParent();
+				if (folder != null) {
+					Files.createDirectories(folder);
+				}
+				channel = FileChannel.open(batch.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.APPEND);
+				currentFile = batch.file;
+			}
+			while (batch.bytes.hasRemaining()) {
+				channel.write(batch.bytes);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not write " + batch.file + ": " + e);
+			failedFile = batch.file;
+			closeChannel();
+			return;
+		}
+		if (batch.isLast) {
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Closes the file being written, if any
+	 */
+	private void closeChannel() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		channel = null;
+		currentFile = null;
+	}
+}
@@ -0,0 +1,80 @@
+package utils;
+
+/**
+ * CommandRingBuffer is a bounded queue of timestamped commands, passed from exactly one producer
+ * thread to exactly one consumer thread. It needs no locks: each index is written by one thread only,
+ * and its volatile write publishes the slots filled or freed before it. Commands are plain ints, kept
+ * in preallocated arrays, so nothing is allocated while commands flow.
+ */
+public class CommandRingBuffer {
+
+	/**
+	 * Receives the commands drained from the buffer
+	 */
+	public interface Handler {
+
+		/**
+		 * @param command - the command
+		 * @param timestamp - the {@link System#nanoTime()} at which the command was offered
+		 */
+		void handle(int command, long timestamp);
+	}
+
+	/**
+	 * The slots of the buffer. Their number is a power of two, so that {@code mask} maps an index to its slot
+	 */
+	private final int[] commands;
+	private final long[] timestamps;
+	private final int mask;
+
+	/**
+	 * The index of the next slot to be read, written only by the consumer,
+	 * and the index of the next slot to be written, written only by the producer
+	 */
+	private volatile long head;
+	private volatile long tail;
+
+	/**
+	 * @param capacity - the least number of commands the buffer must hold, rounded up to a power of two
+	 */
+	public CommandRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.commands = new int[size];
+		this.timestamps = new long[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds a command to the buffer. Must be called by the producer thread only
+	 * @param command - the command
+	 * @param timestamp - the {@link System#nanoTime()} at which the command was created
+	 * @return true if the command was added, false if the buffer was full and the command was dropped
+	 */
+	public boolean offer(int command, long timestamp) {
+		long currentTail = tail;
+		if (currentTail - head > mask) {
+			return false;
+		}
+		int slot = (int) currentTail & mask;
+		commands[slot] = command;
+		timestamps[slot] = timestamp;
+		tail = currentTail + 1;
+		return true;
+	}
+
+	/**
+	 * Hands every command in the buffer to {@code handler}, oldest first. Must be called by the consumer thread only
+	 * @param handler - receives the commands
+	 * @return the number of commands drained
+	 */
+	public int drain(Handler handler) {
+		long currentHead = head;
+		long currentTail = tail;
+		for (long index = currentHead; index < currentTail; index++) {
+			int slot = (int) index & mask;
+			handler.handle(commands[slot], timestamps[slot]);
+		}
+		head = currentTail;
+		return (int) (currentTail - currentHead);
+	}
+}
@@ -0,0 +1,194 @@
+package utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * GameLoop runs the game logic at a fixed rate and renders it at its own rate, pacing itself with
+ * {@link System#nanoTime()}. Deadlines are kept on an absolute schedule, so the loop doesn't drift
+ * when one iteration runs late. After a stall (a GC pause, a window drag) the logic catches up with a
+ * limited number of ticks, and whatever is left is dropped instead of being replayed in a burst.
+ */
+public class GameLoop {
+
+	/**
+	 * The work done by the loop
+	 */
+	public interface Handler {
+
+		/**
+		 * Advances the game logic by one fixed step
+		 */
+		void update();
+
+		/**
+		 * Draws the game
+		 */
+		void render();
+	}
+
+	/**
+	 * Below this many nanoseconds to a deadline the loop stops parking, as the thread might
+	 * not wake up in time, and yields until the deadline instead
+	 */
+	private static final long YIELD_THRESHOLD = 100000L;
+
+	/**
+	 * The duration, in nanoseconds, of a logic tick and of a rendered frame
+	 */
+	private final long nanosPerTick;
+	private final long nanosPerFrame;
+
+	/**
+	 * The most ticks run in a row to catch up with the schedule
+	 */
+	private final int maxCatchUpTicks;
+
+	private final Handler handler;
+
+	/**
+	 * Measures the work of the loop, or null if it isn't being profiled
+	 */
+	private Profiler profiler;
+
+	/**
+	 * Represents if the loop should keep running
+	 */
+	private volatile boolean isRunning;
+
+	/**
+	 * Counters of the loop, written only by the loop thread:
+	 * ticks and frames run, ticks dropped past the catch-up limit, frames skipped for running late,
+	 * and iterations whose work overran the next deadline
+	 */
+	private volatile long ticks;
+	private volatile long frames;
+	private volatile long droppedTicks;
+	private volatile long droppedFrames;
+	private volatile long overruns;
+
+	/**
+	 * @param ticksPerSecond - the rate of the game logic
+	 * @param framesPerSecond - the rate of rendering
+	 * @param maxCatchUpTicks - the most ticks run in a row when the loop is late
+	 * @param handler - the work done by the loop
+	 */
+	public GameLoop(int ticksPerSecond, int framesPerSecond, int maxCatchUpTicks, Handler handler) {
+		this.nanosPerTick = 1000000000L / ticksPerSecond;
+		this.nanosPerFrame = 1000000000L / framesPerSecond;
+		this.maxCatchUpTicks = maxCatchUpTicks;
+		this.handler = handler;
+	}
+
+	/**
+	 * Runs the loop on the calling thread until {@link #stop()} is called or the thread is interrupted
+	 */
+	public void run() {
+		isRunning = true;
+		long now = System.nanoTime();
+		long nextTick = now;
+		long nextFrame = now;
+
+		while (isRunning) {
+			now = System.nanoTime();
+
+			int caughtUp = 0;
+			while (now - nextTick >= 0 && caughtUp < maxCatchUpTicks) {
+				long start = System.nanoTime();
+				handler.update();
+				if (profiler != null) {
+					profiler.recordUpdate(System.nanoTime() - start);
+				}
+				ticks++;
+				nextTick += nanosPerTick;
+				caughtUp++;
+			}
+			if (now - nextTick >= 0) {
+				// too far behind to catch up, so the remaining ticks are dropped
+				long late = (now - nextTick) / nanosPerTick + 1;
+				droppedTicks += late;
+				nextTick += late * nanosPerTick;
+			}
+
+			if (now - nextFrame >= 0) {
+				long start = System.nanoTime();
+				handler.render();
+				if (profiler != null) {
+					profiler.recordRender(System.nanoTime() - start);
+				}
+				frames++;
+				nextFrame += nanosPerFrame;
+				if (now - nextFrame >= 0) {
+					// frames that should have been rendered meanwhile are skipped
+					long late = (now - nextFrame) / nanosPerFrame + 1;
+					droppedFrames += late;
+					nextFrame += late * nanosPerFrame;
+				}
+			}
+
+			long deadline = (nextTick - nextFrame < 0) ? nextTick : nextFrame;
+			if (System.nanoTime() - deadline >= 0) {
+				overruns++;
+			} else if (!sleepUntil(deadline)) {
+				isRunning = false;
+			}
+		}
+	}
+
+	/**
+	 * Parks the thread until {@code deadline}
+	 * @param deadline - the {@link System#nanoTime()} to wake up at
+	 * @return false if the thread was interrupted, true otherwise
+	 */
+	private boolean sleepUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			if (remaining > YIELD_THRESHOLD) {
+				LockSupport.parkNanos(remaining - YIELD_THRESHOLD);
+			} else {
+				Thread.yield();
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+		}
+		if (profiler != null) {
+			profiler.recordSleepOvershoot(-remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the profiler that measures the loop. Must be called before the loop runs
+	 * @param profiler - the profiler, or null to stop profiling
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Makes the loop return after its current iteration
+	 */
+	public void stop() {
+		isRunning = false;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	public long getDroppedTicks() {
+		return droppedTicks;
+	}
+
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	public long getOverruns() {
+		return overruns;
+	}
+}
@@ -0,0 +1,153 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram counts recorded values, such as durations in nanoseconds, in a fixed number of buckets
+ * laid out like an HDR histogram: every power of two is split into {@code SUB_BUCKET_COUNT} linear
+ * buckets, so that any value is kept with a relative error under 1/{@code SUB_BUCKET_COUNT}, from a
+ * single nanosecond up to minutes. Recording a value is a few bit operations on a preallocated array.<br>
+ * A histogram is written by one thread only. Other threads may read it, but then might see a value
+ * that is halfway recorded, which is fine for reporting. Other threads may also reset it, in which case
+ * the writer clears it on its next record, so that the counts are never changed by two threads at once.
+ */
+public class Histogram {
+
+	/**
+	 * Each power of two is split into 2^{@code SUB_BUCKET_BITS} buckets
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The highest value that is told apart from higher ones, which are counted as this one
+	 */
+	public static final long MAX_VALUE = (1L << 40) - 1L;
+
+	/**
+	 * The count of values recorded in each bucket
+	 */
+	private final long[] counts = new long[getIndex(MAX_VALUE) + 1];
+
+	private volatile long totalCount;
+	private volatile long maxValue;
+
+	/**
+	 * Whether another thread asked for the values to be forgotten, which the writer does on its next record
+	 */
+	private volatile boolean isResetRequested;
+
+	/**
+	 * Counts one value
+	 * @param value - the value, which is taken as zero if negative
+	 */
+	public void record(long value) {
+		if (isResetRequested) {
+			clear();
+		}
+		if (value < 0L) {
+			value = 0L;
+		} else if (value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+		counts[getIndex(value)]++;
+		if (value > maxValue) {
+			maxValue = value;
+		}
+		totalCount++;
+	}
+
+	/**
+	 * Forgets every value recorded. May be called by any thread: the values are cleared by the writer
+	 * on its next record, and are reported as none until then
+	 */
+	public void reset() {
+		isResetRequested = true;
+	}
+
+	/**
+	 * Clears the values. Must be called by the writer. A reset asked for meanwhile is kept for the next record
+	 */
+	private void clear() {
+		isResetRequested = false;
+		Arrays.fill(counts, 0L);
+		totalCount = 0L;
+		maxValue = 0L;
+	}
+
+	/**
+	 * @param percentile - the percentile, from 0 to 100
+	 * @return the highest value that may be in the bucket holding the percentile, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = getTotalCount();
+		if (total == 0L) {
+			return 0L;
+		}
+		long target = Math.max(1L, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+		long seen = 0L;
+		for (int index = 0; index < counts.length; index++) {
+			seen += counts[index];
+			if (seen >= target) {
+				return Math.min(getHighestValue(index), maxValue);
+			}
+		}
+		return maxValue;
+	}
+
+	public long getTotalCount() {
+		return isResetRequested ? 0L : totalCount;
+	}
+
+	public long getMaxValue() {
+		return isResetRequested ? 0L : maxValue;
+	}
+
+	/**
+	 * @return the number of buckets of the histogram
+	 */
+	public int getBucketCount() {
+		return counts.length;
+	}
+
+	/**
+	 * @param index - the index of a bucket
+	 * @return the number of values counted in the bucket
+	 */
+	public long getCount(int index) {
+		return isResetRequested ? 0L : counts[index];
+	}
+
+	/**
+	 * @param index - the index of a bucket
+	 * @return the lowest value counted in the bucket
+	 */
+	public static long getLowestValue(int index) {
+		if (index < SUB_BUCKET_COUNT * 2) {
+			return index;
+		}
+		int shift = (index >> SUB_BUCKET_BITS) - 1;
+		long mantissa = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+		return mantissa << shift;
+	}
+
+	/**
+	 * @param index - the index of a bucket
+	 * @return the highest value counted in the bucket
+	 */
+	public static long getHighestValue(int index) {
+		return getLowestValue(index + 1) - 1L;
+	}
+
+	/**
+	 * @param value - a value, from 0 to {@code MAX_VALUE}
+	 * @return the index of the bucket counting the value
+	 */
+	private static int getIndex(long value) {
+		if (value < SUB_BUCKET_COUNT * 2) {
+			return (int) value;
+		}
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+}
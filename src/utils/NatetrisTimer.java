@@ -1,97 +1,182 @@
 package utils;
 
+import java.util.Arrays;
+
 /**
- * NatetrisTimer is a special timer used to calculate each step in the game, which is constant 
- * unless the player chooses to speed it up, by measuring how many milliseconds passed through each 
- * game frame. When it completes one cycle, the game board is updated.
+ * NatetrisTimer is a special timer used to calculate each step in the game, by measuring how many
+ * nanoseconds passed through each game frame. It drives any number of independent {@link Channel}s,
+ * such as the gravity or the soft drop, each one with its own rate. Whenever a channel completes one
+ * cycle, the game reacts to it.<br>
+ * Time is kept in whole nanoseconds, so no precision is lost however long the game runs. After a stall,
+ * such as a GC pause or a window drag, each channel keeps at most a configurable number of completed
+ * cycles, so that they aren't replayed in a burst.
  */
 public class NatetrisTimer {
+
+	/**
+	 * The number of completed cycles a channel keeps on queue, unless told otherwise
+	 */
+	public static final int DEFAULT_MAX_CATCH_UP = 1;
+
 	/**
-	 * Represents the time (in milliseconds) that takes for a cycle to be complete
+	 * The channels driven by this timer
 	 */
-	private float millisPerCycle;
-	
+	private Channel[] channels = new Channel[0];
+
 	/**
 	 * Represents if the timer is running or not
 	 */
 	private boolean isPaused;
-	
+
 	/**
-	 * Represents the time in which the last update occurred
+	 * Represents the time in which the last update occurred, in nanoseconds
 	 */
 	private long lastUpdate;
-	
-	/**
-	 * Represents how many cycles are still left on queue
-	 */
-	private int currentCycles;
-	
-	/**
-	 * Represents how much time has been passed until a cycle is complete
-	 */
-	private float timeToNextCycle;
-	
-	public NatetrisTimer(float cyclesPerSecond) {
-		setCyclesPerSecond(cyclesPerSecond);
+
+	public NatetrisTimer() {
 		reset();
 	}
-	
+
 	/**
-	 * Sets the amount of cycles that occur every second  
-	 * @param cyclesPerSecond
+	 * Creates a new channel, driven by this timer
+	 * @param cyclesPerSecond - the rate of the channel
+	 * @return the new channel
 	 */
-	public void setCyclesPerSecond(float cyclesPerSecond) {
-		this.millisPerCycle = (1.0f / cyclesPerSecond) * 1000;
+	public Channel createChannel(float cyclesPerSecond) {
+		Channel channel = new Channel(cyclesPerSecond);
+		channels = Arrays.copyOf(channels, channels.length + 1);
+		channels[channels.length - 1] = channel;
+		return channel;
 	}
-	
+
 	/**
-	 * Resets the time to it's default values
+	 * Resets the time of the timer and of all of its channels to their default values
 	 */
 	public void reset() {
 		this.isPaused = false;
-		this.currentCycles = 0;
-		this.lastUpdate = getCurrentTime();
+		this.lastUpdate = System.nanoTime();
+		for (Channel channel : channels) {
+			channel.reset();
+		}
 	}
-	
+
 	/**
-	 * Updates the amount of cycles left to reproduce
+	 * Updates the amount of cycles left to reproduce on every channel
 	 */
 	public void update() {
-		long currentUpdate = getCurrentTime();
-		float delta = (float)(currentUpdate - lastUpdate) + timeToNextCycle;
+		long currentUpdate = System.nanoTime();
+		long delta = currentUpdate - lastUpdate;
 		if (!isPaused) {
-			currentCycles += (int)Math.floor((delta / millisPerCycle));
-			timeToNextCycle = delta % millisPerCycle;
+			for (Channel channel : channels) {
+				channel.advance(delta);
+			}
 		}
 		lastUpdate = currentUpdate;
-		
 	}
-	
+
 	/**
-	 * 
-	 * @return
+	 * Tells how far a channel is into its current cycle, counting the time passed since the last update, 
+	 * so that whatever follows the channel can be drawn between two of its cycles
+	 * @param channel - a channel driven by this timer
+	 * @return the progress of the current cycle, from 0 to 1
 	 */
-	public boolean completedOneCycle() {
-		if (currentCycles > 0) {
-			currentCycles--;
-			return true;
-		}
-		return false;
+	public float getProgress(Channel channel) {
+		long pending = isPaused ? 0L : System.nanoTime() - lastUpdate;
+		return channel.getProgress(pending);
 	}
-	
+
 	/**
 	 * Sets the state of the timer to paused or running
-	 * @param state false meaning the timer's paused, true otherwise
+	 * @param state true meaning the timer's paused, false otherwise
 	 */
 	public void setPaused(boolean state) {
 		this.isPaused = state;
 	}
-	
+
 	/**
-	 * Gets a representation of the current time in milliseconds
-	 * @return a {@code long} value representing the time in milliseconds
+	 * A sequence of cycles with its own rate, driven by the timer
 	 */
-	private long getCurrentTime() {
-		return (System.nanoTime() / 1000000L);
+	public static class Channel {
+
+		/**
+		 * Represents the time (in nanoseconds) that takes for a cycle to be complete
+		 */
+		private long nanosPerCycle;
+
+		/**
+		 * Represents how much time (in nanoseconds) has passed since the last cycle was complete
+		 */
+		private long timeInCycle;
+
+		/**
+		 * Represents how many cycles are still left on queue, and how many of them may be kept
+		 */
+		private int currentCycles;
+		private int maxCatchUp = DEFAULT_MAX_CATCH_UP;
+
+		private Channel(float cyclesPerSecond) {
+			setCyclesPerSecond(cyclesPerSecond);
+		}
+
+		/**
+		 * Sets the amount of cycles that occur every second
+		 * @param cyclesPerSecond
+		 */
+		public void setCyclesPerSecond(float cyclesPerSecond) {
+			this.nanosPerCycle = Math.max(1L, (long) (1000000000.0 / cyclesPerSecond));
+		}
+
+		/**
+		 * Sets how many completed cycles are kept on queue at most. Cycles completed past
+		 * this limit are dropped
+		 * @param maxCatchUp
+		 */
+		public void setMaxCatchUp(int maxCatchUp) {
+			this.maxCatchUp = maxCatchUp;
+		}
+
+		/**
+		 * Starts a new cycle, forgetting the cycles left on queue
+		 */
+		public void reset() {
+			this.currentCycles = 0;
+			this.timeInCycle = 0L;
+		}
+
+		/**
+		 * Adds the time passed since the last update to the channel
+		 * @param delta - the time passed, in nanoseconds
+		 */
+		private void advance(long delta) {
+			timeInCycle += delta;
+			if (timeInCycle >= nanosPerCycle) {
+				long completed = timeInCycle / nanosPerCycle;
+				timeInCycle -= completed * nanosPerCycle;
+				currentCycles = (int) Math.min(maxCatchUp, currentCycles + completed);
+			}
+		}
+
+		/**
+		 * @param pending - time passed since the last update, not yet added to the channel, in nanoseconds
+		 * @return the progress of the current cycle, from 0 to 1, or 1 if a completed cycle is still on queue
+		 */
+		private float getProgress(long pending) {
+			if (currentCycles > 0) {
+				return 1.0f;
+			}
+			return Math.min(1.0f, (float) (timeInCycle + pending) / nanosPerCycle);
+		}
+
+		/**
+		 * Consumes one of the cycles left on queue, if any
+		 * @return true if a cycle was completed, false otherwise
+		 */
+		public boolean completedOneCycle() {
+			if (currentCycles > 0) {
+				currentCycles--;
+				return true;
+			}
+			return false;
+		}
 	}
 }
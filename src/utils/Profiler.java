@@ -0,0 +1,116 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Profiler measures the work of a {@link GameLoop}: how long each update and each render take, how late
+ * the loop wakes up from its sleeps, and how many bytes are allocated per frame, using the allocation
+ * counter of the loop thread. Each measure is kept in a {@link Histogram}, so the profiler costs the
+ * same however long the game runs. It's written by the loop thread only.
+ */
+public class Profiler {
+
+	/**
+	 * The time, in nanoseconds, taken by each update and each render
+	 */
+	private final Histogram updateTimes = new Histogram();
+	private final Histogram renderTimes = new Histogram();
+
+	/**
+	 * How late, in nanoseconds, the loop woke up from each sleep
+	 */
+	private final Histogram sleepOvershoots = new Histogram();
+
+	/**
+	 * The bytes allocated by the loop thread between one frame and the next
+	 */
+	private final Histogram allocations = new Histogram();
+
+	/**
+	 * The allocation counter of the JVM, or null if it doesn't provide one
+	 */
+	private final com.sun.management.ThreadMXBean allocationCounter;
+
+	/**
+	 * The bytes allocated by the loop thread as of the last frame, or -1 before the first one
+	 */
+	private long lastAllocatedBytes = -1L;
+
+	public Profiler() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean counter = null;
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			counter = (com.sun.management.ThreadMXBean) threads;
+			if (counter.isThreadAllocatedMemorySupported()) {
+				counter.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				counter = null;
+			}
+		}
+		this.allocationCounter = counter;
+	}
+
+	/**
+	 * @param nanos - the time taken by an update
+	 */
+	public void recordUpdate(long nanos) {
+		updateTimes.record(nanos);
+	}
+
+	/**
+	 * Records the time taken by a render, along with the bytes allocated since the previous one.
+	 * Must be called by the loop thread
+	 * @param nanos - the time taken by the render
+	 */
+	public void recordRender(long nanos) {
+		renderTimes.record(nanos);
+		if (allocationCounter != null) {
+			long allocatedBytes = allocationCounter.getCurrentThreadAllocatedBytes();
+			if (lastAllocatedBytes >= 0L) {
+				allocations.record(allocatedBytes - lastAllocatedBytes);
+			}
+			lastAllocatedBytes = allocatedBytes;
+		}
+	}
+
+	/**
+	 * @param nanos - how late the loop woke up from a sleep
+	 */
+	public void recordSleepOvershoot(long nanos) {
+		sleepOvershoots.record(nanos);
+	}
+
+	/**
+	 * Forgets every measure taken so far
+	 */
+	public void reset() {
+		updateTimes.reset();
+		renderTimes.reset();
+		sleepOvershoots.reset();
+		allocations.reset();
+	}
+
+	public Histogram getUpdateTimes() {
+		return updateTimes;
+	}
+
+	public Histogram getRenderTimes() {
+		return renderTimes;
+	}
+
+	public Histogram getSleepOvershoots() {
+		return sleepOvershoots;
+	}
+
+	public Histogram getAllocations() {
+		return allocations;
+	}
+
+	/**
+	 * @return true if the bytes allocated per frame are being measured
+	 */
+	public boolean isMeasuringAllocations() {
+		return allocationCounter != null;
+	}
+}
@@ -0,0 +1,82 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * TripleBuffer hands values over from one writer thread to one reader thread with no locks and no
+ * allocation. It rotates three preallocated buffers: the writer fills its own back buffer and publishes
+ * it by swapping it with the shared middle buffer, held by a single atomic reference, and the reader
+ * swaps its front buffer with the middle one whenever something new was published. Each thread only
+ * ever touches the buffer it holds, so the reader always sees a complete, consistent value.
+ *
+ * @param <T> the type of the buffers
+ */
+public class TripleBuffer<T> {
+
+	/**
+	 * A buffer, along with the flag telling if it holds a value not yet seen by the reader
+	 */
+	private static class Slot<T> {
+		private final T value;
+		private volatile boolean isFresh;
+
+		private Slot(T value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The buffer shared by both threads
+	 */
+	private final AtomicReference<Slot<T>> middle;
+
+	/**
+	 * The buffer owned by the writer
+	 */
+	private Slot<T> back;
+
+	/**
+	 * The buffer owned by the reader
+	 */
+	private Slot<T> front;
+
+	/**
+	 * @param front - the buffer the reader starts with
+	 * @param middle - the buffer shared by both threads
+	 * @param back - the buffer the writer starts with
+	 */
+	public TripleBuffer(T front, T middle, T back) {
+		this.front = new Slot<T>(front);
+		this.middle = new AtomicReference<Slot<T>>(new Slot<T>(middle));
+		this.back = new Slot<T>(back);
+	}
+
+	/**
+	 * Must be called by the writer thread only
+	 * @return the buffer to be filled by the writer
+	 */
+	public T getWriteBuffer() {
+		return back.value;
+	}
+
+	/**
+	 * Publishes the write buffer, handing the writer another buffer to fill.
+	 * Must be called by the writer thread only
+	 */
+	public void publish() {
+		back.isFresh = true;
+		back = middle.getAndSet(back);
+	}
+
+	/**
+	 * Must be called by the reader thread only
+	 * @return the latest value published, which stays untouched until the next call
+	 */
+	public T acquire() {
+		if (middle.get().isFresh) {
+			front.isFresh = false;
+			front = middle.getAndSet(front);
+		}
+		return front.value;
+	}
+}
@@ -8,7 +8,7 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.net.URL;
+import java.io.InputStream;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
@@ -30,11 +30,33 @@ public class WelcomeScreen extends JFrame {
 	private WelcomePanel welcomePanel;
 	
 	/**
-	 * The game instance
+	 * The size of the screen if its image couldn't be loaded
+	 */
+	private static final int DEFAULT_WIDTH = 640;
+	private static final int DEFAULT_HEIGHT = 480;
+	
+	/**
+	 * The category of the screen's image in the asset manifest
+	 */
+	private static final String WELCOME_CATEGORY = "welcome";
+	
+	/**
+	 * The game instance, and whether it can be played, which is once every asset is loaded
 	 */
 	Natetris natetris;
+	private volatile boolean isReady = false;
 	
-	public WelcomeScreen(final Natetris natetris) {
+	/**
+	 * The progress of the assets being loaded, shown until the game can be played
+	 */
+	private volatile int loadedCount;
+	private volatile int totalCount;
+	
+	/**
+	 * Shows up as soon as its own image is loaded, while the game's assets are loaded in the background
+	 * @param assets - loads the assets of the game
+	 */
+	public WelcomeScreen(AssetLoader assets) {
 		/*
 		 * Basic window properties
 		 */
@@ -46,22 +68,43 @@ public class WelcomeScreen extends JFrame {
 		 * Tries to load WelcomeScreen's images
 		 */
 		BufferedImage welcomeImage = null;
-		try {
-			welcomeImage = createBufferedImage("img/welcome.jpg");
-		} catch (IOException ioe) {
-			System.err.println("Could not open images: " + ioe);
+		String welcomeName = assets.getName(WELCOME_CATEGORY);
+		if (welcomeName != null) {
+			welcomeImage = assets.load(welcomeName, new AssetLoader.Decoder<BufferedImage>() {
+				
+				@Override
+				public BufferedImage decode(InputStream input) throws IOException {
+					return ImageIO.read(input);
+				}
+			}).join();
 		}
 
 		/*
 		 * Initializes class members
 		 */
-		this.natetris = natetris;
 		this.welcomePanel = new WelcomePanel(welcomeImage);
 		
 		/*
 		 * Sets the size of the main JPanel to the size of our welcome image
 		 */
-		welcomePanel.setPreferredSize(new Dimension(welcomeImage.getWidth(), welcomeImage.getHeight()));
+		if (welcomeImage != null) {
+			welcomePanel.setPreferredSize(new Dimension(welcomeImage.getWidth(), welcomeImage.getHeight()));
+		} else {
+			welcomePanel.setPreferredSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
+		}
+		
+		/*
+		 * Shows how far the loading went
+		 */
+		assets.setListener(new AssetLoader.Listener() {
+			
+			@Override
+			public void progressChanged(int loaded, int total) {
+				loadedCount = loaded;
+				totalCount = total;
+				welcomePanel.repaint();
+			}
+		});
 		
 		/*
 		 * Adds our keyListener, so that when ENTER is pressed, we see the game board and the 
@@ -72,6 +115,9 @@ public class WelcomeScreen extends JFrame {
 			public void keyPressed(KeyEvent e) {
 				switch(e.getKeyCode()) {
 					case KeyEvent.VK_ENTER:
+						if (!isReady) {
+							break;
+						}
 						setVisible(false);
 						natetris.setVisible(true);
 						natetris.resetGame();
@@ -85,14 +131,20 @@ public class WelcomeScreen extends JFrame {
 	}
 	
 	/**
-	 * Reads an image from path
-	 * @param path
-	 * @return a new BufferedImage containing the image read from path
-	 * @throws IOException if image could not be loaded
+	 * Lets the game be played once every asset asked for so far is loaded
+	 * @param natetris - the game, which asked for its assets
+	 * @param assets - loads the assets of the game
 	 */
-	private BufferedImage createBufferedImage(String path) throws IOException {
-		URL imgURL = WelcomeScreen.class.getClassLoader().getResource(path);
-		return ImageIO.read(imgURL);
+	public void setGame(Natetris natetris, AssetLoader assets) {
+		this.natetris = natetris;
+		assets.whenAllLoaded().thenRun(new Runnable() {
+			
+			@Override
+			public void run() {
+				isReady = true;
+				welcomePanel.repaint();
+			}
+		});
 	}
 	
 	/**
@@ -114,7 +166,8 @@ public class WelcomeScreen extends JFrame {
 			super.paintComponent(g);
 			g.drawImage(welcomeImage, 0, 0, null);
 			g.setColor(Color.WHITE);
-			g.drawString("Press ENTER, sweetie", welcomeImage.getWidth() - 200, welcomeImage.getHeight() - 50);
+			String text = isReady ? "Press ENTER, sweetie" : "Loading... " + loadedCount + "/" + totalCount;
+			g.drawString(text, getWidth() - 200, getHeight() - 50);
 		}
 	}
 }
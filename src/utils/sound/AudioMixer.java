@@ -0,0 +1,252 @@
+package utils.sound;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * AudioMixer plays every sound of the game through a single {@code SourceDataLine}. A dedicated thread
+ * mixes the music and the voices in small chunks and writes them to the line, whose buffer is kept
+ * small, so that a voice starts playing a few milliseconds after it's asked for, without starting a thread
+ * or opening a line for it. While voices play, the music is ducked, that is, faded down instead of stopped.<br>
+ * If the computer has no audio device, the mixer stays silent and the game goes on without sound.
+ */
+public class AudioMixer {
+
+	/**
+	 * The format the sounds are mixed and played in: 44.1 kHz, 16 bit, mono, which is the format of
+	 * the game's audio files
+	 */
+	public static final AudioFormat FORMAT = new AudioFormat(44100f, 16, 1, true, false);
+
+	/**
+	 * The size of the buffer of the line, in milliseconds, unless another one is asked for
+	 */
+	public static final int DEFAULT_BUFFER_MILLIS = 20;
+
+	/**
+	 * The most voices played at once. Voices asked for beyond that are dropped
+	 */
+	public static final int MAX_VOICES = 8;
+
+	/**
+	 * The gain of the music while voices play, and the time, in samples, the music takes to fade
+	 * from one gain to the other
+	 */
+	private static final float DUCKED_GAIN = 0.25f;
+	private static final float DUCKING_SAMPLES = FORMAT.getFrameRate() * 0.15f;
+
+	/**
+	 * The line the mix is written to, or null if there's no audio device
+	 */
+	private final SourceDataLine line;
+
+	/**
+	 * The size of the chunks mixed at a time, in samples. A chunk is a quarter of the buffer
+	 * of the line, so that the line never runs dry while the next chunk is being mixed
+	 */
+	private final int chunkSamples;
+
+	/**
+	 * The voices playing, with how far each one played, in samples. Empty slots are null
+	 */
+	private final ShortBuffer[] voices = new ShortBuffer[MAX_VOICES];
+	private final int[] voicePositions = new int[MAX_VOICES];
+	private volatile int activeVoiceCount;
+
+	/**
+	 * The music, the samples taken from it for the current chunk, whether it's playing, and its current gain
+	 */
+	private MusicStream music;
+	private final short[] musicSamples;
+	private boolean isMusicPlaying;
+	private float musicGain = 1f;
+
+	private volatile boolean isRunning;
+	private Thread thread;
+
+	/**
+	 * @param bufferMillis - the size of the buffer of the line, in milliseconds. Smaller buffers play sounds sooner,
+	 * but may run dry on slow computers, which is heard as clicks
+	 */
+	public AudioMixer(int bufferMillis) {
+		int bufferSamples = Math.max(256, (int) (FORMAT.getFrameRate() * bufferMillis / 1000f));
+		this.chunkSamples = bufferSamples / 4;
+		this.musicSamples = new short[chunkSamples];
+		this.line = openLine(bufferSamples * FORMAT.getFrameSize());
+	}
+
+	/**
+	 * @param bufferBytes - the size of the buffer of the line, in bytes
+	 * @return the line, opened, or null if there's no audio device able to play the mix
+	 */
+	private static SourceDataLine openLine(int bufferBytes) {
+		try {
+			SourceDataLine line = AudioSystem.getSourceDataLine(FORMAT);
+			line.open(FORMAT, bufferBytes);
+			return line;
+		} catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+			System.err.println("No audio device available, the game will be silent: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the mixer has a line to play the sounds through
+	 */
+	public boolean isAvailable() {
+		return line != null;
+	}
+
+	/**
+	 * Starts the thread that mixes the sounds and plays them
+	 */
+	public synchronized void start() {
+		if (line == null || isRunning) {
+			return;
+		}
+		isRunning = true;
+		line.start();
+		thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				mixLoop();
+			}
+		}, "Natetris audio mixer");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Stops the mixing thread and closes the line
+	 */
+	public void close() {
+		Thread mixer;
+		synchronized (this) {
+			isRunning = false;
+			mixer = thread;
+			thread = null;
+		}
+		if (mixer != null) {
+			try {
+				mixer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (line != null) {
+			line.close();
+		}
+	}
+
+	/**
+	 * Plays a voice over the music, which is ducked until every voice is over. May be called from any thread
+	 * @param sound - the voice
+	 * @return true if the voice is playing, false if there's no room for it, or no audio device
+	 */
+	public synchronized boolean playVoice(Sound sound) {
+		if (line == null) {
+			return false;
+		}
+		for (int voice = 0; voice < MAX_VOICES; voice++) {
+			if (voices[voice] == null) {
+				voices[voice] = sound.getSamples();
+				voicePositions[voice] = 0;
+				activeVoiceCount++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param music - the music, streamed in a loop while it's playing
+	 */
+	public synchronized void setMusic(MusicStream music) {
+		this.music = music;
+	}
+
+	/**
+	 * Plays the music, or stops it, keeping where it stopped so that it plays on from there
+	 * @param state - true to play the music, false to stop it
+	 */
+	public synchronized void setMusicPlaying(boolean state) {
+		this.isMusicPlaying = state;
+	}
+
+	/**
+	 * @return the number of voices playing
+	 */
+	public int getActiveVoiceCount() {
+		return activeVoiceCount;
+	}
+
+	/**
+	 * Mixes chunk after chunk and writes them to the line. Writing blocks while the buffer
+	 * of the line is full, which is what paces the thread
+	 */
+	private void mixLoop() {
+		int[] mix = new int[chunkSamples];
+		byte[] bytes = new byte[chunkSamples * FORMAT.getFrameSize()];
+		while (isRunning) {
+			synchronized (this) {
+				mixChunk(mix);
+			}
+			for (int i = 0; i < mix.length; i++) {
+				int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+				bytes[2 * i] = (byte) sample;
+				bytes[2 * i + 1] = (byte) (sample >> 8);
+			}
+			line.write(bytes, 0, bytes.length);
+		}
+		line.stop();
+		line.flush();
+	}
+
+	/**
+	 * Adds up the next samples of the music and of the voices. Voices that are over leave their slot
+	 * @param mix - where the chunk is mixed into
+	 */
+	private void mixChunk(int[] mix) {
+		Arrays.fill(mix, 0);
+
+		if (music != null && isMusicPlaying) {
+			float targetGain = (activeVoiceCount > 0) ? DUCKED_GAIN : 1f;
+			float gainStep = (1f - DUCKED_GAIN) / DUCKING_SAMPLES;
+			int count = music.read(musicSamples, mix.length);
+			for (int i = 0; i < count; i++) {
+				if (musicGain < targetGain) {
+					musicGain = Math.min(targetGain, musicGain + gainStep);
+				} else if (musicGain > targetGain) {
+					musicGain = Math.max(targetGain, musicGain - gainStep);
+				}
+				mix[i] = (int) (musicSamples[i] * musicGain);
+			}
+		}
+
+		for (int voice = 0; voice < MAX_VOICES; voice++) {
+			ShortBuffer samples = voices[voice];
+			if (samples == null) {
+				continue;
+			}
+			int position = voicePositions[voice];
+			int count = Math.min(mix.length, samples.limit() - position);
+			for (int i = 0; i < count; i++) {
+				mix[i] += samples.get(position + i);
+			}
+			position += count;
+			if (position == samples.limit()) {
+				voices[voice] = null;
+				activeVoiceCount--;
+			} else {
+				voicePositions[voice] = position;
+			}
+		}
+	}
+}
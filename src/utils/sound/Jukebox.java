@@ -1,17 +1,14 @@
 package utils.sound;
 
-import java.applet.Applet;
-import java.applet.AudioClip;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import javax.swing.JPanel;
+import java.util.concurrent.CompletableFuture;
 
+import jdk.jfr.EventType;
 import natetris.Piece;
+import natetris.jfr.AudioEvent;
+import utils.AssetLoader;
 
 /**
  * The Jukebox class is responsible for handling the game's audio files,
@@ -23,18 +20,16 @@ import natetris.Piece;
 public class Jukebox {
 	
 	/**
-	 * The name of the sound files. They were loaded dynamically before adding
-	 * .jar support to the game, but for now they'll be loaded statically.
-	 * FIXME: add reflection dynamic loading so that we don't care about the file names no more
+	 * The categories of the sound files in the asset manifest: the voices played when N rows
+	 * are cleared are in the {@code VOICE_CATEGORY} followed by N
 	 */
-	String []soundFiles = {"1_s1.wav",
-	                       "1_s2.wav",
-	                       "1_s3.wav",
-	                       "2_s1.wav",
-	                       "3_s1.wav",
-	                       "3_s2.wav",
-	                       "4_s1.wav",
-	                       "music.wav"};
+	private static final String VOICE_CATEGORY = "voice.";
+	private static final String MUSIC_CATEGORY = "music";
+	
+	/**
+	 * The flight recorder event of a voice, only created while it's being recorded
+	 */
+	private static final EventType AUDIO_EVENT = EventType.getEventType(AudioEvent.class);
 	
 	/**
 	 * Random number generator to randomize audio selection
@@ -42,137 +37,118 @@ public class Jukebox {
 	private Random rand;
 	
 	/**
-	 * {@code audioFiles} contains all the audio files available in '/sound' folder.<br>
+	 * {@code audioFiles} contains all the voices listed by the asset manifest.<br>
 	 * 
 	 * Depending on the number of rows cleared, there are a number of different 
 	 * sounds that can be played. Hence, {@code audioFiles} is organized as an 
 	 * HashMap of ArrayList of files: each ArrayList is associated with a key 
 	 * representing the number of rows that were cleared, and contains all the audio files 
-	 * related to that key
+	 * related to that key. The files are loaded in the background, and those not loaded yet aren't played
 	 */
-	private HashMap<Integer, ArrayList<AudioClip>> audioLibrary = new HashMap<>();
+	private HashMap<Integer, ArrayList<CompletableFuture<Sound>>> audioLibrary = new HashMap<>();
 
 	/**
-	 * Index in audioLibrary of the main song of the game
+	 * The main song of the game, streamed from its file while it plays, as it's by far the largest one
 	 */
-	private AudioClip musicFile = null;
+	private MusicStream musicFile = null;
 	
 	/**
-	 * Timer that holds the music execution so player can hear sounds from audioLibrary
+	 * Plays the music and the voices. The size of its buffer, in milliseconds, may be set 
+	 * with the {@code natetris.audioBufferMillis} system property
 	 */
-	Timer timer = new Timer();
+	private final AudioMixer mixer;
 	
-	public Jukebox() {
+	/**
+	 * @param assets - loads the voices in the background
+	 */
+	public Jukebox(AssetLoader assets) {
 		this.rand = new Random();
+		this.mixer = new AudioMixer(Integer.getInteger("natetris.audioBufferMillis", AudioMixer.DEFAULT_BUFFER_MILLIS));
 		try {
 			/*
 			 * Loads the audio files and assign them to our local library
 			 */
-			loadAudioLibrary();
+			loadAudioLibrary(assets);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		if (musicFile != null && mixer.isAvailable()) {
+			mixer.setMusic(musicFile);
+			musicFile.start();
+		}
+		mixer.start();
 	}
 	
 	/**
-	 * Plays an audio associated with the number of cleared rows
+	 * Plays an audio associated with the number of cleared rows. The music is ducked while it plays
 	 * @param clearedRows
 	 * @throws Exception 
 	 */
 	public void playVoice(int clearedLines) throws Exception {
+		AudioEvent event = AUDIO_EVENT.isEnabled() ? new AudioEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
 		int audiosAvailable = audioLibrary.get(clearedLines).size();
+		if (audiosAvailable == 0) {
+			return;
+		}
 		int audioIndex = rand.nextInt(audiosAvailable);
-		audioLibrary.get(clearedLines).get(audioIndex).play();
-		
+		Sound voice = audioLibrary.get(clearedLines).get(audioIndex).getNow(null);
+		if (voice != null) {
+			mixer.playVoice(voice);
+		}
+		if (event != null && event.shouldCommit()) {
+			event.clearedLines = clearedLines;
+			event.clip = audioIndex;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @return the number of voices that are still playing
+	 */
+	public int getActiveVoiceCount() {
+		return mixer.getActiveVoiceCount();
 	}
 
+	/**
+	 * Plays the music in a loop, from where it was stopped
+	 */
 	public void playMusic() {
-		this.musicFile.loop();
+		mixer.setMusicPlaying(true);
 	}
 	
 	/**
-	 * Pauses the music that is currently playing and schedules it to start 
-	 * back again in 5.5 seconds, which is the average time of sounds
+	 * Stops the music, until it's played again
 	 */
-	public void pausesMusic() {
-		this.musicFile.stop();
-		this.timer.schedule(new MusicTask(this), 5500);
+	public void stopMusic() {
+		mixer.setMusicPlaying(false);
 	}
 	
 	/**
 	 * Loads all audio files and fills the {@code audioFiles} variable with them
+	 * @param assets - loads the voices in the background
 	 */
-	private void loadAudioLibrary() {
+	private void loadAudioLibrary(AssetLoader assets) {
 		/*
 		 * Initializes our "audio library"
 		 */
 		for (int i = 1; i <= Piece.MAX_PIECE_DIMENSION; i++) {
-			audioLibrary.put(i, new ArrayList<AudioClip>());
+			audioLibrary.put(i, new ArrayList<CompletableFuture<Sound>>());
 		}
 		
 		/*
-		 *  Fills our audio library with the audio files.
-		 *  This has a really strong coupling with the name of the files, 
-		 *  but I couln't think of anything better at the time.
+		 *  Fills our audio library with the audio files, found by their category
 		 */
-		String fileName = null;
-		try {
-			for (String file: soundFiles) {
-				fileName = "sound/" + file;
-				switch (file.charAt(0)) {
-					case '1':
-						audioLibrary.get(1).add(getAudioClip(fileName)); // One row completed audio
-						break;
-					case '2':
-						audioLibrary.get(2).add(getAudioClip(fileName)); // Two rows completed audio
-						break;
-					case '3':
-						audioLibrary.get(3).add(getAudioClip(fileName)); // Three rows completed audio
-						break;
-					case '4':
-						audioLibrary.get(4).add(getAudioClip(fileName)); // Four rows completed audio
-						break;
-					default:
-						musicFile = getAudioClip(fileName); // default songs; loop song
-						break;
-				}
+		for (int i = 1; i <= Piece.MAX_PIECE_DIMENSION; i++) {
+			for (String fileName : assets.getNames(VOICE_CATEGORY + i)) {
+				audioLibrary.get(i).add(assets.loadSound(fileName));
 			}
-		} catch (Exception e) {
-			System.err.println("Could not open files at: " + fileName);
 		}
-	}
-	
-	/**
-	 * Gets an audioClip to be played. If no file was found with the given
-	 * fileName parameter, the method returns <b>null</b>.
-	 * @param fileName 
-	 * @return an AudioClip associated with fileName
-	 */
-	private AudioClip getAudioClip(String fileName) {
-		URL audioURL = Jukebox.class.getClassLoader().getResource(fileName);
-		if (audioURL != null) {
-			return Applet.newAudioClip(audioURL);
-		} else {
-			return null;
+		String music = assets.getName(MUSIC_CATEGORY);
+		if (music != null) {
+			musicFile = assets.openMusic(music); // loop song
 		}
 	}
-	
-	/**
-	 * Helper class that is used to schedule the playback of the music
-	 * when another audio has ended 
-	 */
-	private class MusicTask extends TimerTask {
-		
-		private Jukebox jukebox;
-		
-		public MusicTask(Jukebox jukebox) {
-			this.jukebox = jukebox;
-		}
-		
-		@Override
-		public void run() {
-			this.jukebox.playMusic();
-		}
-	
-	}
 }
@@ -0,0 +1,247 @@
+package utils.sound;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ShortBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * MusicStream plays a long audio file in a loop without ever holding it in memory: a thread decodes
+ * the file chunk by chunk into a small ring buffer, which the {@link AudioMixer} empties as it plays.
+ * When the file is over, it's opened again and streamed into the same buffer, so the loop is seamless.
+ * Music from an {@link utils.AssetPack} is already decoded, and is copied from the pack the same way.
+ * When the mixer stops reading, the buffer fills up and the thread waits, which keeps the position
+ * of the music until it's played again.<br>
+ * The ring buffer has exactly one producer, the streaming thread, and one consumer, the mixer thread,
+ * and needs no locks, like {@link utils.CommandRingBuffer}.
+ */
+public class MusicStream {
+
+	/**
+	 * The least duration of music held in the buffer, in milliseconds
+	 */
+	private static final int BUFFER_MILLIS = 500;
+
+	/**
+	 * The number of samples decoded at a time
+	 */
+	private static final int READ_SAMPLES = 2048;
+
+	/**
+	 * How long the streaming thread waits, in nanoseconds, before checking again for room in a full buffer
+	 */
+	private static final long WAIT_NANOS = 50000000L;
+
+	/**
+	 * The location of the file, or the decoded samples of the music, whichever it's streamed from
+	 */
+	private final URL url;
+	private final ShortBuffer pcm;
+
+	/**
+	 * Where the streaming thread is in the music: the file being decoded, if any, along with whether
+	 * nothing was decoded from it yet, or the position in the samples
+	 */
+	private AudioInputStream input;
+	private boolean isEmpty;
+	private int pcmPosition;
+
+	/**
+	 * The samples of the buffer. Their number is a power of two, so that {@code mask} maps an index to its sample
+	 */
+	private final short[] samples;
+	private final int mask;
+
+	/**
+	 * The index of the next sample to be read, written only by the mixer thread,
+	 * and the index of the next sample to be written, written only by the streaming thread
+	 */
+	private volatile long head;
+	private volatile long tail;
+
+	private volatile boolean isRunning;
+	private Thread thread;
+
+	/**
+	 * @param url - the location of the file, which is opened by {@link #start()}
+	 */
+	public MusicStream(URL url) {
+		this(url, null);
+	}
+
+	/**
+	 * @param pcm - the samples of the music, in the format of the mixer, from their position to their limit.
+	 * They must not be changed
+	 */
+	public MusicStream(ShortBuffer pcm) {
+		this(null, pcm.slice());
+	}
+
+	private MusicStream(URL url, ShortBuffer pcm) {
+		this.url = url;
+		this.pcm = pcm;
+		int capacity = (int) (AudioMixer.FORMAT.getFrameRate() * BUFFER_MILLIS / 1000f);
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.samples = new short[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Starts the thread that streams the file into the buffer
+	 */
+	public synchronized void start() {
+		if (isRunning) {
+			return;
+		}
+		isRunning = true;
+		thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				streamLoop();
+			}
+		}, "Natetris music stream");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the streaming thread
+	 */
+	public void close() {
+		Thread streamer;
+		synchronized (this) {
+			isRunning = false;
+			streamer = thread;
+			thread = null;
+		}
+		if (streamer != null) {
+			LockSupport.unpark(streamer);
+			try {
+				streamer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Takes the next samples of the music out of the buffer. Must be called by the mixer thread only
+	 * @param buffer - where the samples are copied to
+	 * @param count - the number of samples wanted
+	 * @return the number of samples copied, which is less than {@code count} if the buffer ran dry
+	 */
+	int read(short[] buffer, int count) {
+		long currentHead = head;
+		int available = (int) Math.min(count, tail - currentHead);
+		for (int i = 0; i < available; i++) {
+			buffer[i] = samples[(int) (currentHead + i) & mask];
+		}
+		head = currentHead + available;
+		return available;
+	}
+
+	/**
+	 * Copies the music into the buffer whenever there's room for another chunk, going back
+	 * to its beginning each time it's over
+	 */
+	private void streamLoop() {
+		short[] chunk = new short[READ_SAMPLES];
+		byte[] bytes = (pcm == null) ? new byte[READ_SAMPLES * AudioMixer.FORMAT.getFrameSize()] : null;
+		try {
+			while (isRunning) {
+				if (samples.length - (tail - head) < READ_SAMPLES) {
+					LockSupport.parkNanos(WAIT_NANOS);
+					continue;
+				}
+
+				int count = (pcm != null) ? readSamples(chunk) : readFile(chunk, bytes);
+				long currentTail = tail;
+				for (int i = 0; i < count; i++) {
+					samples[(int) (currentTail + i) & mask] = chunk[i];
+				}
+				tail = currentTail + count;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param chunk - where the next samples of the music are copied to
+	 * @return the number of samples copied
+	 * @throws IOException if there are no samples
+	 */
+	private int readSamples(short[] chunk) throws IOException {
+		int length = pcm.limit();
+		if (length == 0) {
+			throw new IOException("No music in the samples");
+		}
+		int count = Math.min(chunk.length, length - pcmPosition);
+		ShortBuffer source = pcm.duplicate();
+		source.position(pcmPosition);
+		source.get(chunk, 0, count);
+		pcmPosition = (pcmPosition + count) % length;
+		return count;
+	}
+
+	/**
+	 * @param chunk - where the next samples of the music are decoded to
+	 * @param bytes - where the file is read to
+	 * @return the number of samples decoded
+	 * @throws IOException if the file can't be read, or has no samples
+	 */
+	private int readFile(short[] chunk, byte[] bytes) throws IOException {
+		while (true) {
+			if (input == null) {
+				input = open();
+				isEmpty = true;
+			}
+			int count = input.read(bytes, 0, Math.min(bytes.length, chunk.length * 2));
+			if (count > 0) {
+				isEmpty = false;
+				int sampleCount = count / 2;
+				for (int i = 0; i < sampleCount; i++) {
+					chunk[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8));
+				}
+				return sampleCount;
+			}
+			input.close();
+			input = null;
+			if (isEmpty) {
+				throw new IOException("No music in " + url);
+			}
+		}
+	}
+
+	/**
+	 * @return the file, opened from its beginning, in the format of the mixer
+	 * @throws IOException if the file can't be opened, or can't be converted
+	 */
+	private AudioInputStream open() throws IOException {
+		BufferedInputStream stream = new BufferedInputStream(url.openStream());
+		try {
+			AudioInputStream input = AudioSystem.getAudioInputStream(stream);
+			if (!input.getFormat().matches(AudioMixer.FORMAT)) {
+				input = AudioSystem.getAudioInputStream(AudioMixer.FORMAT, input);
+			}
+			return input;
+		} catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+			stream.close();
+			throw new IOException("Can't play " + url, e);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package utils.sound;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ShortBuffer;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Sound is an audio file decoded once, when it's loaded, into the samples the {@link AudioMixer} plays,
+ * so that playing it only means reading a buffer. Sounds from an {@link utils.AssetPack} are already
+ * decoded, and their samples are read right from the pack.
+ */
+public class Sound {
+
+	/**
+	 * The samples, in the format of the mixer
+	 */
+	private final ShortBuffer samples;
+
+	private Sound(ShortBuffer samples) {
+		this.samples = samples;
+	}
+
+	/**
+	 * @param samples - samples in the format of the mixer, from their position to their limit. They must not be changed
+	 * @return the sound made of the samples, which aren't copied
+	 */
+	public static Sound wrap(ShortBuffer samples) {
+		return new Sound(samples.slice());
+	}
+
+	/**
+	 * Reads and decodes an audio file, converting it to the format of the mixer if needed
+	 * @param stream - the file, which is left open
+	 * @return the sound
+	 * @throws IOException if the file can't be read, or can't be converted
+	 */
+	public static Sound read(InputStream stream) throws IOException {
+		AudioInputStream input = null;
+		try {
+			input = AudioSystem.getAudioInputStream(stream.markSupported() ? stream : new BufferedInputStream(stream));
+			if (!input.getFormat().matches(AudioMixer.FORMAT)) {
+				input = AudioSystem.getAudioInputStream(AudioMixer.FORMAT, input);
+			}
+			return new Sound(ShortBuffer.wrap(decode(input)));
+		} catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+			throw new IOException("Can't play the sound", e);
+		}
+	}
+
+	/**
+	 * @param input - a stream of 16 bit, little-endian samples
+	 * @return the samples
+	 * @throws IOException if the stream can't be read
+	 */
+	private static short[] decode(AudioInputStream input) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = input.read(buffer)) > 0) {
+			bytes.write(buffer, 0, count);
+		}
+		byte[] data = bytes.toByteArray();
+		short[] samples = new short[data.length / 2];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (short) ((data[2 * i] & 0xFF) | (data[2 * i + 1] << 8));
+		}
+		return samples;
+	}
+
+	/**
+	 * @return the samples of the sound, from 0 to their limit. They must not be changed
+	 */
+	ShortBuffer getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @return how long the sound lasts, in milliseconds
+	 */
+	public long getDurationMillis() {
+		return (long) (samples.limit() * 1000L / AudioMixer.FORMAT.getFrameRate());
+	}
+}